@@ -0,0 +1,59 @@
+/*
+ * SudokuSolver wrapping Sudoku's backtracking search, the iterative
+ * one that keeps its state on an explicit stack (see Sudoku.resume()).
+ * CS108 Stanford.
+ *
+ * The Sudoku is created on the first solve() and reloaded for every
+ * grid of the same size after that, so its stack and other search
+ * arrays are reused.
+ */
+public class BacktrackingSolver implements SudokuSolver {
+
+	private final Sudoku.Ordering ordering;
+	private Sudoku sudoku;
+	private SolverMetrics metrics;
+
+	/**
+	 * Solver using Sudoku's default ordering.
+	 */
+	public BacktrackingSolver() {
+		this(Sudoku.Ordering.STATIC);
+	}
+
+	public BacktrackingSolver(Sudoku.Ordering ordering) {
+		this.ordering = ordering;
+	}
+
+	@Override
+	public int solve(int[][] grid, int limit) {
+		if(sudoku == null || sudoku.getSize() != grid.length) {
+			sudoku = new Sudoku(grid);
+			sudoku.setOrdering(ordering);
+			sudoku.setMetrics(metrics);
+		} else {
+			sudoku.load(grid);
+		}
+		sudoku.setMaxSolutions(limit);
+		return sudoku.solve();
+	}
+
+	/**
+	 * Times the setup and search of every solve into metrics.
+	 */
+	public void setMetrics(SolverMetrics metrics) {
+		this.metrics = metrics;
+		if(sudoku != null) sudoku.setMetrics(metrics);
+	}
+
+	@Override
+	public int[][] getSolution() {
+		return (sudoku == null) ? null : sudoku.getSolution();
+	}
+
+	/**
+	 * Returns the figures from the last solve(), or null before the first.
+	 */
+	public SolveStats getStats() {
+		return (sudoku == null) ? null : sudoku.getStats();
+	}
+}
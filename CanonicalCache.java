@@ -0,0 +1,381 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Solve results shared between symmetric copies of 9x9 puzzles.
+ * CS108 Stanford.
+ *
+ * Relabelled, transposed or row/column shuffled copies of a puzzle
+ * have the same number of solutions, and their solutions map onto one
+ * another (see SudokuCanonicalizer), so a copy of a cached puzzle is
+ * answered without any search: the stored solution is mapped into the
+ * caller's orientation and digits.
+ *
+ * Canonical forms cost more than an average solve, so they are only
+ * computed when needed. Entries are grouped under a cheap signature
+ * that no symmetry changes -- clue counts per row, column and digit --
+ * and a puzzle whose signature is new is simply solved and stored.
+ * Exact repeats are looked up by their cells; only a puzzle that shares
+ * a signature with different cached ones is canonicalized, along with
+ * those entries, once each, and then looked up by canonical form. Both
+ * lookups are hashed, however many puzzles share a signature. Beyond
+ * the capacity, the oldest entry of the least recently used signature
+ * is dropped. Safe to share between threads; solving and
+ * canonicalizing happen outside the lock.
+ */
+public class CanonicalCache {
+
+	private static final int SIZE = Sudoku.SIZE;
+	private static final int PART = Sudoku.PART;
+	private static final int CELLS = SIZE * SIZE;
+
+	/**
+	 * A solved puzzle as first seen, with its canonical form once some
+	 * other puzzle has needed it.
+	 */
+	private static class Entry {
+		private final String grid;  // cells as digits, row by row
+		private final int solutions;
+		private final int limit;
+		private final byte[] solution;  // first solution of grid, or null
+		private final String key;  // canonical grid, or null
+		private final byte[] canonicalSolution;  // solution in canonical form, or null
+
+		private Entry(String grid, int solutions, int limit, byte[] solution,
+				String key, byte[] canonicalSolution) {
+			this.grid = grid;
+			this.solutions = solutions;
+			this.limit = limit;
+			this.solution = solution;
+			this.key = key;
+			this.canonicalSolution = canonicalSolution;
+		}
+
+		/**
+		 * True if the count is good for the given limit: either it was
+		 * exact, or it was cut off at a limit at least as high.
+		 */
+		private boolean answers(int limit) {
+			return solutions < this.limit || this.limit >= limit;
+		}
+
+		/**
+		 * Approximate heap bytes held, counting object and array headers.
+		 */
+		private long footprint() {
+			long bytes = 40 + 24 + 2 * bytesOf(CELLS);
+			if(key != null) bytes += 24 + bytesOf(CELLS) + bytesOf(CELLS);
+			return bytes;
+		}
+	}
+
+	/**
+	 * The entries sharing one signature, oldest first, and those that
+	 * have been canonicalized by their canonical form.
+	 */
+	private static class Bucket {
+		private final Map<String, Entry> byGrid = new LinkedHashMap<String, Entry>();
+		private final Map<String, Entry> byKey = new HashMap<String, Entry>();
+
+		/**
+		 * Adds e, in place of any entry for the same grid.
+		 */
+		private void add(Entry e) {
+			Entry old = byGrid.put(e.grid, e);
+			if(old != null) removeKey(old);
+			if(e.key != null) byKey.put(e.key, e);
+		}
+
+		private void removeKey(Entry e) {
+			if(e.key != null && byKey.get(e.key) == e) byKey.remove(e.key);
+		}
+
+		/**
+		 * Entries not canonicalized yet.
+		 */
+		private List<Entry> unkeyed() {
+			List<Entry> list = new ArrayList<Entry>();
+			for(Entry e : byGrid.values()) {
+				if(e.key == null) list.add(e);
+			}
+			return list;
+		}
+	}
+
+	private final int capacity;
+	private final Map<Long, Bucket> entries;
+	private int size = 0;
+	private long lookups = 0;
+	private long exactHits = 0;
+	private long symmetricHits = 0;
+	private long canonicalized = 0;
+
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	/**
+	 * Per-thread canonicalizer and buffers.
+	 */
+	private static class Scratch {
+		private final SudokuCanonicalizer canonicalizer = new SudokuCanonicalizer();
+		private final int[] cells = new int[CELLS];
+		private final char[] key = new char[CELLS];
+		private final int[][] grid = new int[SIZE][SIZE];
+		private final int[] counts = new int[3 * SIZE + 1];
+	}
+
+	/**
+	 * @param capacity number of puzzles kept
+	 */
+	public CanonicalCache(int capacity) {
+		if(capacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+		this.capacity = capacity;
+		entries = new LinkedHashMap<Long, Bucket>(16, 0.75f, true);
+	}
+
+	/**
+	 * Counts the solutions of a 9x9 grid up to limit, from the cache if
+	 * it or a symmetric copy was solved before, otherwise with solver.
+	 * @param solution filled with the first solution if there is one
+	 * @return number of solutions, at most limit
+	 */
+	public int solve(int[][] grid, SudokuSolver solver, int limit, int[][] solution) {
+		if(grid.length != SIZE) {
+			throw new IllegalArgumentException("Only 9x9 grids can be cached");
+		}
+		Scratch s = scratch.get();
+		Long signature = signature(grid, s.counts);
+		String text = toText(grid, s);
+		Entry hit = null;
+		List<Entry> unkeyed = null;
+		synchronized(this) {
+			lookups++;
+			Bucket bucket = entries.get(signature);
+			if(bucket != null) {
+				Entry e = bucket.byGrid.get(text);
+				if(e != null && e.answers(limit)) {
+					exactHits++;
+					hit = e;
+				} else {
+					unkeyed = bucket.unkeyed();
+				}
+			}
+		}
+		if(hit != null) {
+			if(hit.solution != null) toGrid(hit.solution, solution);
+			return Math.min(hit.solutions, limit);
+		}
+
+		String key = null;
+		if(unkeyed != null) {
+			// the canonicalizer keeps only the last transformation, so
+			// give the entries their keys before the grid gets its own
+			List<Entry> keyed = new ArrayList<Entry>(unkeyed.size());
+			for(Entry e : unkeyed) keyed.add(withKey(e, s));
+			key = canonicalKey(grid, s);
+			synchronized(this) {
+				Bucket bucket = entries.get(signature);
+				if(bucket != null) {
+					for(int k = 0; k < keyed.size(); k++) {
+						// unless dropped or replaced meanwhile
+						Entry e = keyed.get(k);
+						if(bucket.byGrid.get(e.grid) == unkeyed.get(k)) bucket.add(e);
+					}
+					Entry e = bucket.byKey.get(key);
+					if(e != null && e.answers(limit)) {
+						symmetricHits++;
+						hit = e;
+					}
+				}
+			}
+			if(hit != null) {
+				if(hit.canonicalSolution != null) {
+					for(int i = 0; i < CELLS; i++) s.cells[i] = hit.canonicalSolution[i];
+					s.canonicalizer.toOriginal(s.cells, solution);
+				}
+				return Math.min(hit.solutions, limit);
+			}
+		}
+
+		int count = solver.solve(grid, limit);
+		byte[] found = null;
+		byte[] canonical = null;
+		if(count > 0) {
+			int[][] first = solver.getSolution();
+			for(int i = 0; i < SIZE; i++) System.arraycopy(first[i], 0, solution[i], 0, SIZE);
+			found = toBytes(first);
+			if(key != null) canonical = canonicalSolution(first, s);
+		}
+		Entry e = new Entry(text, count, limit, found, key, canonical);
+		synchronized(this) {
+			Bucket bucket = entries.get(signature);
+			if(bucket == null) {
+				bucket = new Bucket();
+				entries.put(signature, bucket);
+			}
+			int before = bucket.byGrid.size();
+			bucket.add(e);
+			size += bucket.byGrid.size() - before;
+			while(size > capacity) evictOldest();
+		}
+		return count;
+	}
+
+	/**
+	 * Drops the oldest entry of the least recently used signature.
+	 */
+	private void evictOldest() {
+		Iterator<Bucket> buckets = entries.values().iterator();
+		Bucket bucket = buckets.next();
+		Iterator<Entry> oldest = bucket.byGrid.values().iterator();
+		bucket.removeKey(oldest.next());
+		oldest.remove();
+		size--;
+		if(bucket.byGrid.isEmpty()) buckets.remove();
+	}
+
+	/**
+	 * Returns the entry with its canonical form and its solution's.
+	 */
+	private Entry withKey(Entry e, Scratch s) {
+		for(int i = 0; i < CELLS; i++) s.grid[i / SIZE][i % SIZE] = e.grid.charAt(i) - '0';
+		String key = canonicalKey(s.grid, s);
+		byte[] canonical = null;
+		if(e.solution != null) {
+			toGrid(e.solution, s.grid);
+			canonical = canonicalSolution(s.grid, s);
+		}
+		return new Entry(e.grid, e.solutions, e.limit, e.solution, key, canonical);
+	}
+
+	/**
+	 * Maps a solution of the grid last canonicalized into canonical form.
+	 */
+	private static byte[] canonicalSolution(int[][] solution, Scratch s) {
+		s.canonicalizer.toCanonical(solution, s.cells);
+		byte[] canonical = new byte[CELLS];
+		for(int i = 0; i < CELLS; i++) canonical[i] = (byte) s.cells[i];
+		return canonical;
+	}
+
+	private String canonicalKey(int[][] grid, Scratch s) {
+		synchronized(this) {
+			canonicalized++;
+		}
+		s.canonicalizer.canonicalize(grid, s.cells);
+		for(int i = 0; i < CELLS; i++) s.key[i] = (char) ('0' + s.cells[i]);
+		return new String(s.key);
+	}
+
+	private static String toText(int[][] grid, Scratch s) {
+		for(int i = 0; i < CELLS; i++) s.key[i] = (char) ('0' + grid[i / SIZE][i % SIZE]);
+		return new String(s.key);
+	}
+
+	/**
+	 * A value no symmetry changes: the clue counts of each band's rows
+	 * and each stack's columns, sorted within and across bands (and the
+	 * two orientations in order), and the sorted clue count per digit.
+	 */
+	private static long signature(int[][] grid, int[] counts) {
+		Arrays.fill(counts, 0);
+		for(int i = 0; i < SIZE; i++) {
+			for(int j = 0; j < SIZE; j++) {
+				int v = grid[i][j];
+				if(v == 0) continue;
+				counts[i]++;
+				counts[SIZE + j]++;
+				counts[2 * SIZE + v]++;
+			}
+		}
+		long rows = bandSignature(counts, 0), cols = bandSignature(counts, SIZE);
+		long signature = Math.min(rows, cols) * 1000000000L + Math.max(rows, cols);
+		Arrays.sort(counts, 2 * SIZE + 1, 3 * SIZE + 1);
+		for(int d = 1; d <= SIZE; d++) signature = 31 * signature + counts[2 * SIZE + d];
+		return signature;
+	}
+
+	/**
+	 * The nine counts from offset as three sorted bands, in sorted order,
+	 * packed into nine decimal digits.
+	 */
+	private static long bandSignature(int[] counts, int offset) {
+		int[] bands = new int[PART];
+		int[] band = new int[PART];
+		for(int b = 0; b < PART; b++) {
+			System.arraycopy(counts, offset + b * PART, band, 0, PART);
+			Arrays.sort(band);
+			bands[b] = band[0] * 100 + band[1] * 10 + band[2];
+		}
+		Arrays.sort(bands);
+		return bands[0] * 1000000L + bands[1] * 1000L + bands[2];
+	}
+
+	private static byte[] toBytes(int[][] grid) {
+		byte[] bytes = new byte[CELLS];
+		for(int i = 0; i < CELLS; i++) bytes[i] = (byte) grid[i / SIZE][i % SIZE];
+		return bytes;
+	}
+
+	private static void toGrid(byte[] bytes, int[][] grid) {
+		for(int i = 0; i < CELLS; i++) grid[i / SIZE][i % SIZE] = bytes[i];
+	}
+
+	/**
+	 * Heap bytes of an array of n bytes or chars stored one byte each.
+	 */
+	private static long bytesOf(int n) {
+		return (16 + n + 7) & ~7;
+	}
+
+	public synchronized long getLookups() {
+		return lookups;
+	}
+
+	/**
+	 * Lookups answered from the cache, exact or symmetric.
+	 */
+	public synchronized long getHits() {
+		return exactHits + symmetricHits;
+	}
+
+	public synchronized int getEntries() {
+		return size;
+	}
+
+	/**
+	 * Estimated heap held by the cache, in bytes: the entries' arrays,
+	 * strings and objects, their map nodes, and about 160 bytes of map
+	 * node, boxed signature and maps per signature.
+	 */
+	public synchronized long getFootprint() {
+		long bytes = 0;
+		for(Bucket bucket : entries.values()) {
+			bytes += 64 + 2 * 48 + 40L * bucket.byGrid.size() + 32L * bucket.byKey.size();
+			for(Entry e : bucket.byGrid.values()) bytes += e.footprint();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns a one-line summary, e.g. "canonical cache: 40 hits (10 exact,
+	 * 30 symmetric) / 100 lookups (40%), 60 entries, ~18KB, 45 canonicalized".
+	 */
+	public synchronized String getSummary() {
+		long hits = exactHits + symmetricHits;
+		return "canonical cache: " + hits + " hits (" + exactHits + " exact, " + symmetricHits
+				+ " symmetric) / " + lookups + " lookups ("
+				+ ((lookups == 0) ? 0 : 100 * hits / lookups) + "%), " + getEntries()
+				+ " entries, ~" + (getFootprint() + 1023) / 1024 + "KB, "
+				+ canonicalized + " canonicalized";
+	}
+}
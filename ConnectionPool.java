@@ -0,0 +1,114 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * A fixed set of JDBC connections shared between threads.
+ * CS108 Stanford.
+ *
+ * Each connection keeps the PreparedStatements made on it, keyed by
+ * their SQL, so a query is parsed once per connection and its statement
+ * reused for every later run. A thread takes a connection, runs its
+ * statements and gives it back; nobody else uses it in between.
+ */
+public class ConnectionPool {
+
+	/**
+	 * A connection of the pool and its statements.
+	 */
+	public static class Pooled {
+		private final Connection connection;
+		private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+
+		private Pooled(Connection connection) {
+			this.connection = connection;
+		}
+
+		/**
+		 * Returns the statement for sql, preparing it on first use, with
+		 * its parameters cleared. Not to be closed by the caller.
+		 */
+		public PreparedStatement prepare(String sql) throws SQLException {
+			PreparedStatement stmt = statements.get(sql);
+			if(stmt == null) {
+				stmt = connection.prepareStatement(sql);
+				statements.put(sql, stmt);
+			} else {
+				stmt.clearParameters();
+			}
+			return stmt;
+		}
+
+		public Connection getConnection() {
+			return connection;
+		}
+
+		private void close() {
+			for(PreparedStatement stmt : statements.values()) {
+				try {
+					stmt.close();
+				} catch(SQLException e) {
+					// closing anyway
+				}
+			}
+			statements.clear();
+			try {
+				connection.close();
+			} catch(SQLException e) {
+				// closing anyway
+			}
+		}
+	}
+
+	private final Pooled[] all;
+	private final BlockingQueue<Pooled> idle;
+
+	/**
+	 * Opens size connections to url.
+	 * @throws SQLException if any cannot be opened; those already open are closed
+	 */
+	public ConnectionPool(String url, String user, String password, int size) throws SQLException {
+		all = new Pooled[size];
+		idle = new ArrayBlockingQueue<Pooled>(size);
+		try {
+			for(int i = 0; i < size; i++) {
+				all[i] = new Pooled(DriverManager.getConnection(url, user, password));
+				idle.add(all[i]);
+			}
+		} catch(SQLException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Takes an idle connection, waiting for one if all are in use.
+	 * Must be given back with release().
+	 */
+	public Pooled take() throws SQLException {
+		try {
+			return idle.take();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted waiting for a connection");
+		}
+	}
+
+	public void release(Pooled pooled) {
+		idle.add(pooled);
+	}
+
+	/**
+	 * Closes every connection and statement, including any still taken.
+	 */
+	public void close() {
+		for(Pooled pooled : all) {
+			if(pooled != null) pooled.close();
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Exact-cover (Algorithm X / Dancing Links) Sudoku engine.
+ * CS108 Stanford.
+ *
+ * Each (cell, value) placement is a row of the cover matrix -- 729 of
+ * them for a 9x9 grid -- and it covers four columns: its cell, and its
+ * value in its row, its column and its box, the same constraints
+ * Sudoku.validate() checks. The links are kept in flat int arrays,
+ * built when a grid of a new size arrives and restored after every
+ * solve(), so a solver can be reused without rebuilding the matrix.
+ */
+public class DancingLinksSolver implements SudokuSolver {
+
+	private static final int ROOT = 0;  // column headers are 1..columns
+
+	// Matrix shape for the current grid size.
+	private int gridSize, cells, columns, rows;
+
+	private int[] left, right, up, down, column, rowOf;
+	private int[] size;  // rows left in each column
+	private int[] rowStart;  // first node of each row
+	private boolean[] covered;
+
+	private int[] choices;  // chosen row at each depth
+	private int count;
+	private int limit;
+	private int[][] solution;
+
+	/**
+	 * Builds the cover matrix for grids of side part * part.
+	 */
+	private void build(int part) {
+		gridSize = part * part;
+		cells = gridSize * gridSize;
+		columns = 4 * cells;
+		rows = cells * gridSize;
+		int nodes = 1 + columns + 4 * rows;
+		left = new int[nodes];
+		right = new int[nodes];
+		up = new int[nodes];
+		down = new int[nodes];
+		column = new int[nodes];
+		rowOf = new int[nodes];
+		size = new int[columns + 1];
+		rowStart = new int[rows];
+		covered = new boolean[columns + 1];
+		choices = new int[cells];
+
+		for(int c = 0; c <= columns; c++) {
+			left[c] = (c == 0) ? columns : c - 1;
+			right[c] = (c == columns) ? 0 : c + 1;
+			up[c] = c;
+			down[c] = c;
+			column[c] = c;
+		}
+		int node = columns + 1;
+		for(int row = 0; row < rows; row++) {
+			int cell = row / gridSize, value = row % gridSize;
+			int x = cell / gridSize, y = cell % gridSize;
+			int box = part * (x / part) + y / part;
+			int[] cols = {
+				1 + cell,
+				1 + cells + x * gridSize + value,
+				1 + 2 * cells + y * gridSize + value,
+				1 + 3 * cells + box * gridSize + value };
+			rowStart[row] = node;
+			for(int k = 0; k < 4; k++) {
+				int n = node + k, c = cols[k];
+				column[n] = c;
+				rowOf[n] = row;
+				left[n] = node + (k + 3) % 4;
+				right[n] = node + (k + 1) % 4;
+				up[n] = up[c];
+				down[n] = c;
+				down[up[c]] = n;
+				up[c] = n;
+				size[c]++;
+			}
+			node += 4;
+		}
+	}
+
+	@Override
+	public int solve(int[][] grid, int limit) {
+		if(grid.length != gridSize) {
+			int part = (int) Math.round(Math.sqrt(grid.length));
+			if(part * part != grid.length || part < Sudoku.MIN_PART || part > Sudoku.MAX_PART) {
+				throw new IllegalArgumentException("Unsupported grid side " + grid.length);
+			}
+			build(part);
+		}
+		this.limit = limit;
+		count = 0;
+		solution = null;
+
+		int clues = 0;
+		boolean consistent = true;
+		for(int x = 0; x < gridSize && consistent; x++) {
+			for(int y = 0; y < gridSize; y++) {
+				int value = grid[x][y];
+				if(value == 0) continue;
+				// A value outside 1..gridSize has no row of its own; it
+				// would pick another cell's. No grid holding one is solvable.
+				if(value < 0 || value > gridSize) {
+					consistent = false;
+					break;
+				}
+				int row = (x * gridSize + y) * gridSize + value - 1;
+				if(!selectRow(row)) {
+					consistent = false;
+					break;
+				}
+				choices[clues++] = row;
+			}
+		}
+		if(consistent && limit > 0) search(clues);
+		for(int k = clues - 1; k >= 0; k--) {
+			deselectRow(choices[k]);
+		}
+		return count;
+	}
+
+	@Override
+	public int[][] getSolution() {
+		return solution;
+	}
+
+	/**
+	 * Algorithm X: cover the column with the fewest rows left, then try
+	 * each of its rows in turn. depth is the number of rows chosen so far.
+	 */
+	private void search(int depth) {
+		if(right[ROOT] == ROOT) {
+			if(count == 0) recordSolution(depth);
+			count++;
+			return;
+		}
+		int best = right[ROOT];
+		for(int c = right[best]; c != ROOT; c = right[c]) {
+			if(size[c] < size[best]) best = c;
+		}
+		if(size[best] == 0) return;
+
+		cover(best);
+		for(int r = down[best]; r != best; r = down[r]) {
+			choices[depth] = rowOf[r];
+			for(int j = right[r]; j != r; j = right[j]) cover(column[j]);
+			search(depth + 1);
+			for(int j = left[r]; j != r; j = left[j]) uncover(column[j]);
+			if(count >= limit) break;
+		}
+		uncover(best);
+	}
+
+	/**
+	 * Covers the four columns of a clue's row. Returns false, leaving
+	 * the matrix untouched, if any of them is already covered, i.e. the
+	 * clue clashes with an earlier one.
+	 */
+	private boolean selectRow(int row) {
+		int start = rowStart[row];
+		for(int k = 0; k < 4; k++) {
+			if(covered[column[start + k]]) return false;
+		}
+		for(int k = 0; k < 4; k++) {
+			cover(column[start + k]);
+		}
+		return true;
+	}
+
+	private void deselectRow(int row) {
+		int start = rowStart[row];
+		for(int k = 3; k >= 0; k--) {
+			uncover(column[start + k]);
+		}
+	}
+
+	private void cover(int c) {
+		covered[c] = true;
+		right[left[c]] = right[c];
+		left[right[c]] = left[c];
+		for(int i = down[c]; i != c; i = down[i]) {
+			for(int j = right[i]; j != i; j = right[j]) {
+				down[up[j]] = down[j];
+				up[down[j]] = up[j];
+				size[column[j]]--;
+			}
+		}
+	}
+
+	private void uncover(int c) {
+		for(int i = up[c]; i != c; i = up[i]) {
+			for(int j = left[i]; j != i; j = left[j]) {
+				size[column[j]]++;
+				down[up[j]] = j;
+				up[down[j]] = j;
+			}
+		}
+		right[left[c]] = c;
+		left[right[c]] = c;
+		covered[c] = false;
+	}
+
+	private void recordSolution(int depth) {
+		solution = new int[gridSize][gridSize];
+		for(int k = 0; k < depth; k++) {
+			int cell = choices[k] / gridSize;
+			solution[cell / gridSize][cell % gridSize] = choices[k] % gridSize + 1;
+		}
+	}
+}
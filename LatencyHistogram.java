@@ -0,0 +1,97 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Counts nanosecond latencies in log-linear buckets, like HdrHistogram.
+ * CS108 Stanford.
+ *
+ * Values below 2 * SUB_BUCKETS each get their own bucket; above that
+ * every power of two is split into SUB_BUCKETS equal buckets, so any
+ * recorded value is known to within about 3% whatever its size, in a
+ * fixed few KB. Recording is a lock-free increment, so one histogram
+ * can be shared by all the threads of a batch job.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKETS = 32;
+	private static final int SUB_BITS = 5;  // log2(SUB_BUCKETS)
+	private static final int MAX_SHIFT = 63 - SUB_BITS;
+	private static final int BUCKETS = (MAX_SHIFT + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Adds one value, in nanoseconds. Negative values count as 0.
+	 */
+	public void record(long nanos) {
+		if(nanos < 0) nanos = 0;
+		counts.incrementAndGet(bucketOf(nanos));
+		count.incrementAndGet();
+		sum.addAndGet(nanos);
+		long m;
+		while(nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+			// another thread raised it; look again
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Total of all values recorded, in nanoseconds.
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = count.get();
+		return (n == 0) ? 0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * Value at or below which the given percentage of values fall, as
+	 * the top of its bucket (never more than getMax()), or 0 if nothing
+	 * has been recorded.
+	 * @param percentile 0 to 100, e.g. 99 for p99
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = count.get();
+		if(n == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		for(int b = 0; b < BUCKETS; b++) {
+			seen += counts.get(b);
+			if(seen >= rank) return Math.min(highestIn(b), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * Bucket for a value: itself if small, otherwise its top SUB_BITS + 1
+	 * bits and how far they were shifted.
+	 */
+	private static int bucketOf(long value) {
+		if(value < 2 * SUB_BUCKETS) return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * Largest value that falls in bucket b.
+	 */
+	private static long highestIn(int b) {
+		if(b < 2 * SUB_BUCKETS) return b;
+		int shift = b / SUB_BUCKETS - 1;
+		long top = (long) (b % SUB_BUCKETS + SUB_BUCKETS + 1) << shift;
+		return (top < 0) ? Long.MAX_VALUE : top - 1;
+	}
+}
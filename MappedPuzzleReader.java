@@ -0,0 +1,115 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Reads puzzles in the 81-characters-per-line format straight out of a
+ * memory-mapped file.
+ * CS108 Stanford.
+ *
+ * Digits are decoded from the MappedByteBuffer into a caller-supplied
+ * int[81], so no String or intermediate array is made per puzzle. The
+ * file is mapped a window at a time, which keeps files larger than 2GB
+ * readable. Same format as Sudoku.lineToGrid: '0' or '.' for a blank,
+ * other characters skipped, blank lines and lines starting with #
+ * ignored.
+ */
+public class MappedPuzzleReader implements Closeable {
+
+	private static final long WINDOW = 64L << 20;  // bytes mapped at a time
+	private static final int CELLS = Sudoku.SIZE * Sudoku.SIZE;
+
+	private final FileChannel channel;
+	private final long length;
+	private MappedByteBuffer buffer;
+	private long bufferStart;  // file offset of the start of buffer
+	private long newlines = 0;  // line terminators read so far
+	private long line = 0;  // line number of the last puzzle
+
+	public MappedPuzzleReader(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		length = channel.size();
+		map(0);
+	}
+
+	/**
+	 * Decodes the next puzzle into cells, row by row.
+	 * @param cells array of 81 ints, overwritten
+	 * @return number of cells on the line (81 for a well-formed puzzle),
+	 * or -1 at end of file
+	 */
+	public int next(int[] cells) throws IOException {
+		return next(cells, 0);
+	}
+
+	/**
+	 * Decodes the next puzzle into cells[offset] to cells[offset + 80],
+	 * so a block of puzzles can be read into one flat array.
+	 * @param cells destination array
+	 * @param offset index of the first cell
+	 * @return number of cells on the line (81 for a well-formed puzzle;
+	 * only the first 81 are stored), or -1 at end of file
+	 */
+	public int next(int[] cells, int offset) throws IOException {
+		int c = read();
+		while(true) {
+			if(c == -1) return -1;
+			if(c == '\n') {
+				newlines++;
+			} else if(c == '#') {
+				while(c != '\n' && c != -1) c = read();
+				continue;
+			} else if(c != '\r' && c != ' ' && c != '\t') {
+				break;
+			}
+			c = read();
+		}
+		line = newlines + 1;
+		int found = 0;
+		for(; c != -1 && c != '\n'; c = read()) {
+			int value;
+			if(c >= '0' && c <= '9') value = c - '0';
+			else if(c == '.') value = 0;
+			else continue;
+			if(found < CELLS) cells[offset + found] = value;
+			found++;
+		}
+		if(c == '\n') newlines++;
+		return found;
+	}
+
+	/**
+	 * Returns the line number of the puzzle last returned by next().
+	 */
+	public long getLineNumber() {
+		return line;
+	}
+
+	@Override
+	public void close() throws IOException {
+		buffer = null;
+		channel.close();
+	}
+
+	/**
+	 * Next byte of the file, or -1 at the end. Maps the following window
+	 * when the current one runs out.
+	 */
+	private int read() throws IOException {
+		if(!buffer.hasRemaining()) {
+			long next = bufferStart + buffer.position();
+			if(next >= length) return -1;
+			map(next);
+		}
+		return buffer.get() & 0xff;
+	}
+
+	private void map(long position) throws IOException {
+		bufferStart = position;
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+				Math.min(WINDOW, length - position));
+	}
+}
@@ -5,6 +5,10 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 
 public class MetropolisGUI extends JFrame {
@@ -19,8 +23,11 @@ public class MetropolisGUI extends JFrame {
 	
 	private JButton addButton;
 	private JButton searchButton;
+	private JButton importButton;
 	private JComboBox populationDrop;
 	private JComboBox matchDrop;
+	private JLabel statusLabel;
+	private CompletableFuture<Long> latestQuery;
 		
 	
 	public MetropolisGUI() {
@@ -74,22 +81,30 @@ public class MetropolisGUI extends JFrame {
 
 		addButton = new JButton("Add");
 		searchButton = new JButton("Search");
+		importButton = new JButton("Import...");
 		populationDrop = new JComboBox(POPULATION_OPTIONS);
 		matchDrop = new JComboBox(MATCH_OPTIONS);
+		statusLabel = new JLabel(" ");
 		
 		addButton.setAlignmentX(Component.LEFT_ALIGNMENT);
 		addButton.setAlignmentY(Component.TOP_ALIGNMENT);
 		searchButton.setAlignmentX(Component.LEFT_ALIGNMENT);
+		importButton.setAlignmentX(Component.LEFT_ALIGNMENT);
 		populationDrop.setAlignmentX(Component.LEFT_ALIGNMENT);
 		matchDrop.setAlignmentX(Component.LEFT_ALIGNMENT);
+		statusLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
 		
 		rightSide.add(addButton);
 		rightSide.add(Box.createVerticalStrut(5));
 		rightSide.add(searchButton);
+		rightSide.add(Box.createVerticalStrut(5));
+		rightSide.add(importButton);
 		rightSide.add(Box.createVerticalStrut(25));
 		rightSide.add(populationDrop);
 		rightSide.add(Box.createVerticalStrut(5));
 		rightSide.add(matchDrop);
+		rightSide.add(Box.createVerticalStrut(25));
+		rightSide.add(statusLabel);
 		return rightSide;
 	}
 	
@@ -117,23 +132,89 @@ public class MetropolisGUI extends JFrame {
 	}
 	
 	
+	/**
+	 * Shows doing in the status label until query finishes, then the
+	 * number of rows and how long it took, or why it failed. A query
+	 * overtaken by a newer one leaves the label to that one.
+	 */
+	private void showStatus(String doing, final CompletableFuture<Long> query) {
+		final long start = System.nanoTime();
+		latestQuery = query;
+		statusLabel.setText(doing);
+		// the model completes its futures on the event thread
+		query.whenComplete(new BiConsumer<Long, Throwable>() {
+			@Override
+			public void accept(Long rows, Throwable error) {
+				if(query != latestQuery) return;
+				long ms = (System.nanoTime() - start) / 1000000;
+				if(error == null) statusLabel.setText(rows + " rows in " + ms + " ms");
+				else statusLabel.setText("Failed: " + error.getMessage());
+			}
+		});
+	}
+	
+	/**
+	 * Asks for a CSV file and imports it, showing the rows done and the
+	 * rate in the status label. Only one import runs at a time.
+	 */
+	private void importFile() {
+		JFileChooser chooser = new JFileChooser();
+		if(chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+		importButton.setEnabled(false);
+		final long start = System.nanoTime();
+		latestQuery = null;  // so an earlier search finishing leaves the label alone
+		statusLabel.setText("Importing...");
+		model.importCsv(chooser.getSelectedFile(), MetropolisImporter.DEFAULT_BATCH_SIZE,
+				MetropolisImporter.DEFAULT_COMMIT_EVERY, new MetropolisImporter.Progress() {
+			@Override
+			public void imported(long rows, long skipped, long nanos) {
+				statusLabel.setText("Imported " + rows + " rows, "
+						+ (long) (rows / (nanos / 1e9)) + " rows/s");
+			}
+		}).whenComplete(new BiConsumer<Long, Throwable>() {
+			@Override
+			public void accept(Long rows, Throwable error) {
+				importButton.setEnabled(true);
+				double seconds = (System.nanoTime() - start) / 1e9;
+				if(error == null) {
+					statusLabel.setText(String.format("Imported %d rows in %.1f s, %.0f rows/s",
+							rows, seconds, rows / seconds));
+				} else {
+					statusLabel.setText("Import failed: " + error.getMessage());
+				}
+			}
+		});
+	}
+	
 	private void addListeners() {
+		addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				model.close();
+			}
+		});
 		addButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent arg0) {
-				model.add(metropolisBox.getText(),
+				showStatus("Adding...", model.add(metropolisBox.getText(),
 					   	  continentBox.getText(),
-					   	  populationBox.getText());
+					   	  populationBox.getText()));
+			}
+		});
+		importButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent arg0) {
+				importFile();
 			}
 		});
 		searchButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent arg0) {
-				model.search(metropolisBox.getText(),
+				showStatus("Searching...", model.search(metropolisBox.getText(),
 							 continentBox.getText(),
 							 populationBox.getText(),
 							 getPopulationDropValue(),
-							 getMatchDropValue());
+							 getMatchDropValue()));
 			}
 		});
 	}
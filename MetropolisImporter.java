@@ -0,0 +1,251 @@
+import java.io.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Streams metropolis records from a CSV file into the database.
+ * CS108 Stanford.
+ *
+ * Each line holds metropolis, continent and population, separated by
+ * commas; a field may be quoted with " and a "" inside quotes stands for
+ * one ". Blank fields, and populations that are not whole numbers, go
+ * in as nulls, as with MetropolisTableModel.add. A first line reading
+ * metropolis,continent,population is taken as a header and skipped, and
+ * so are lines without exactly three fields.
+ *
+ * Rows are sent with addBatch/executeBatch, batchSize at a time, in
+ * transactions of about commitEvery rows, so a million-row file is a
+ * few thousand round trips instead of two million; the lines are read
+ * as they are sent, never held all at once.
+ */
+public class MetropolisImporter {
+
+	/**
+	 * Told how far an import has got after every commit.
+	 */
+	public interface Progress {
+		/**
+		 * @param rows rows inserted and committed so far
+		 * @param skipped lines skipped so far
+		 * @param nanos time since the import started
+		 */
+		void imported(long rows, long skipped, long nanos);
+	}
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	public static final int DEFAULT_COMMIT_EVERY = 50000;
+
+	private static final String INSERT = "INSERT INTO metropolises VALUES (?, ?, ?)";
+
+	private final int batchSize;
+	private final int commitEvery;
+	private long rows = 0;
+	private long skipped = 0;
+
+	/**
+	 * @param batchSize rows per executeBatch
+	 * @param commitEvery rows per transaction, rounded up to whole batches
+	 */
+	public MetropolisImporter(int batchSize, int commitEvery) {
+		if(batchSize < 1 || commitEvery < 1) throw new IllegalArgumentException("Sizes must be positive");
+		this.batchSize = batchSize;
+		this.commitEvery = commitEvery;
+	}
+
+	/**
+	 * Inserts every record read from in. Auto-commit is turned off for
+	 * the import and restored after; a failure rolls back the transaction
+	 * in progress, leaving earlier ones committed.
+	 * @param progress told after every commit, or null
+	 * @return number of rows inserted
+	 */
+	public long importCsv(Connection conn, BufferedReader in, Progress progress)
+			throws IOException, SQLException {
+		long start = System.nanoTime();
+		boolean autoCommit = conn.getAutoCommit();
+		conn.setAutoCommit(false);
+		PreparedStatement stmt = conn.prepareStatement(INSERT);
+		try {
+			String[] fields = new String[3];
+			int batched = 0;
+			long uncommitted = 0;
+			boolean first = true;
+			String line;
+			while((line = in.readLine()) != null) {
+				boolean parsed = parseLine(line, fields);
+				if(first && parsed && isHeader(fields)) parsed = false;
+				first = false;
+				if(!parsed) {
+					skipped++;
+					continue;
+				}
+				bind(stmt, fields);
+				stmt.addBatch();
+				if(++batched == batchSize) {
+					stmt.executeBatch();
+					uncommitted += batched;
+					batched = 0;
+					if(uncommitted >= commitEvery) {
+						conn.commit();
+						rows += uncommitted;
+						uncommitted = 0;
+						if(progress != null) progress.imported(rows, skipped, System.nanoTime() - start);
+					}
+				}
+			}
+			if(batched > 0) stmt.executeBatch();
+			conn.commit();
+			rows += uncommitted + batched;
+			if(progress != null) progress.imported(rows, skipped, System.nanoTime() - start);
+			return rows;
+		} catch(Throwable e) {
+			// Whatever stopped it, a bad read or a runtime exception as
+			// well as a SQL error, the transaction in progress goes. If
+			// that fails too, e.g. the connection dropped, e still says why.
+			try {
+				conn.rollback();
+			} catch(SQLException r) {
+				e.addSuppressed(r);
+			}
+			throw e;
+		} finally {
+			try {
+				stmt.close();
+			} finally {
+				conn.setAutoCommit(autoCommit);
+			}
+		}
+	}
+
+	/**
+	 * Rows committed by importCsv so far.
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * Lines importCsv has skipped as malformed, or as the header.
+	 */
+	public long getSkipped() {
+		return skipped;
+	}
+
+	private static void bind(PreparedStatement stmt, String[] fields) throws SQLException {
+		for(int i = 0; i < 2; i++) {
+			if(fields[i].trim().length() == 0) stmt.setNull(i + 1, Types.VARCHAR);
+			else stmt.setString(i + 1, fields[i]);
+		}
+		try {
+			stmt.setLong(3, Long.parseLong(fields[2].trim()));
+		} catch(NumberFormatException e) {
+			stmt.setNull(3, Types.BIGINT);
+		}
+	}
+
+	private static boolean isHeader(String[] fields) {
+		return fields[0].trim().equalsIgnoreCase("metropolis")
+				&& fields[1].trim().equalsIgnoreCase("continent")
+				&& fields[2].trim().equalsIgnoreCase("population");
+	}
+
+	/**
+	 * Splits a CSV line into fields, which must have room for exactly
+	 * the number of fields the line holds.
+	 * @return false if the line has another number of fields or an
+	 * unclosed quote
+	 */
+	static boolean parseLine(String line, String[] fields) {
+		StringBuilder sb = new StringBuilder();
+		int n = 0;
+		boolean quoted = false;
+		for(int i = 0; i < line.length(); i++) {
+			char ch = line.charAt(i);
+			if(quoted) {
+				if(ch != '"') {
+					sb.append(ch);
+				} else if(i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					sb.append('"');
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if(ch == '"') {
+				quoted = true;
+			} else if(ch == ',') {
+				if(n == fields.length - 1) return false;
+				fields[n++] = sb.toString();
+				sb.setLength(0);
+			} else {
+				sb.append(ch);
+			}
+		}
+		if(quoted || n != fields.length - 1) return false;
+		fields[n] = sb.toString();
+		return true;
+	}
+
+	/**
+	 * Usage: MetropolisImporter file.csv [batch-size [commit-every [add-rows]]]
+	 * Imports the file and reports rows per second. If add-rows is given,
+	 * first adds that many of its records one by one with
+	 * MetropolisTableModel.add, for comparison. Every row goes into the
+	 * real table.
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length < 1) {
+			System.err.println("Usage: MetropolisImporter file.csv [batch-size [commit-every [add-rows]]]");
+			System.exit(1);
+		}
+		int batchSize = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_BATCH_SIZE;
+		int commitEvery = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_COMMIT_EVERY;
+		int addRows = (args.length > 3) ? Integer.parseInt(args[3]) : 0;
+
+		double addRate = 0;
+		if(addRows > 0) {
+			MetropolisTableModel model = new MetropolisTableModel();
+			BufferedReader in = new BufferedReader(new FileReader(args[0]));
+			try {
+				String[] fields = new String[3];
+				int added = 0;
+				long start = System.nanoTime();
+				String line;
+				while(added < addRows && (line = in.readLine()) != null) {
+					if(!parseLine(line, fields) || isHeader(fields)) continue;
+					model.add(fields[0], fields[1], fields[2]).get(1, TimeUnit.MINUTES);
+					added++;
+				}
+				double seconds = (System.nanoTime() - start) / 1e9;
+				addRate = added / seconds;
+				System.err.printf("add(): %d rows in %.3fs, %.0f rows/s%n", added, seconds, addRate);
+			} finally {
+				in.close();
+				model.close();
+			}
+		}
+
+		MetropolisImporter importer = new MetropolisImporter(batchSize, commitEvery);
+		Connection conn = MetropolisTableModel.openImportConnection();
+		BufferedReader in = new BufferedReader(new FileReader(args[0]), 1 << 16);
+		try {
+			long start = System.nanoTime();
+			long rows = importer.importCsv(conn, in, new Progress() {
+				@Override
+				public void imported(long rows, long skipped, long nanos) {
+					System.err.printf("\r%d rows, %.0f rows/s", rows, rows / (nanos / 1e9));
+				}
+			});
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.err.printf("%nimport: %d rows (%d lines skipped) in %.3fs, %.0f rows/s,"
+					+ " batches of %d, commits every %d%n", rows, importer.getSkipped(), seconds,
+					rows / seconds, batchSize, commitEvery);
+			if(addRate > 0) System.err.printf("%.1fx the rate of add()%n", rows / seconds / addRate);
+		} finally {
+			in.close();
+			conn.close();
+		}
+	}
+}
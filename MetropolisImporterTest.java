@@ -0,0 +1,269 @@
+import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/*
+ * Tests for MetropolisImporter, against a stand-in for the database.
+ * CS108 Stanford.
+ */
+public class MetropolisImporterTest extends TestCase {
+
+	/**
+	 * A Connection and its PreparedStatement that keep rows in lists:
+	 * executeBatch() moves the batch into the open transaction, commit()
+	 * moves that into committed and rollback() drops it. Batch number
+	 * failAt, counting from 1, throws failure instead.
+	 */
+	private static class FakeDatabase implements InvocationHandler {
+		final List<List<Object>> committed = new ArrayList<List<Object>>();
+		final List<List<Object>> open = new ArrayList<List<Object>>();
+		private final List<List<Object>> batch = new ArrayList<List<Object>>();
+		private final Object[] params = new Object[3];
+		boolean autoCommit = true;
+		boolean statementClosed = false;
+		int commits = 0, rollbacks = 0, batches = 0;
+		int failAt = 0;
+		Exception failure;
+		SQLException rollbackFailure;
+
+		final Connection connection = (Connection) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[] { Connection.class }, this);
+
+		private final PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[] { PreparedStatement.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+						return statementCall(method.getName(), args);
+					}
+				});
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+			String name = method.getName();
+			if(name.equals("getAutoCommit")) return autoCommit;
+			if(name.equals("setAutoCommit")) {
+				// turning it back on commits, as JDBC has it
+				if((Boolean) args[0]) moveOpen();
+				autoCommit = (Boolean) args[0];
+				return null;
+			}
+			if(name.equals("prepareStatement")) {
+				assertEquals("INSERT INTO metropolises VALUES (?, ?, ?)", args[0]);
+				return statement;
+			}
+			if(name.equals("commit")) {
+				commits++;
+				moveOpen();
+				return null;
+			}
+			if(name.equals("rollback")) {
+				if(rollbackFailure != null) throw rollbackFailure;
+				rollbacks++;
+				open.clear();
+				return null;
+			}
+			throw new UnsupportedOperationException(name);
+		}
+
+		private void moveOpen() {
+			committed.addAll(open);
+			open.clear();
+		}
+
+		private Object statementCall(String name, Object[] args) throws Exception {
+			if(name.equals("setString") || name.equals("setLong")) {
+				params[(Integer) args[0] - 1] = args[1];
+				return null;
+			}
+			if(name.equals("setNull")) {
+				params[(Integer) args[0] - 1] = null;
+				return null;
+			}
+			if(name.equals("addBatch")) {
+				batch.add(new ArrayList<Object>(Arrays.asList(params)));
+				return null;
+			}
+			if(name.equals("executeBatch")) {
+				if(++batches == failAt) throw failure;
+				int[] counts = new int[batch.size()];
+				Arrays.fill(counts, 1);
+				if(autoCommit) committed.addAll(batch);
+				else open.addAll(batch);
+				batch.clear();
+				return counts;
+			}
+			if(name.equals("close")) {
+				statementClosed = true;
+				return null;
+			}
+			throw new UnsupportedOperationException(name);
+		}
+	}
+
+	/**
+	 * n lines of CSV, line i for a metropolis named "City i" with
+	 * population i.
+	 */
+	private static String cities(int n) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < n; i++) sb.append("City " + i + ",Europe," + i + "\n");
+		return sb.toString();
+	}
+
+	private static List<Object> row(String metropolis, String continent, Long population) {
+		return Arrays.<Object>asList(metropolis, continent, population);
+	}
+
+	public void testImportsInBatches() throws IOException, SQLException {
+		FakeDatabase db = new FakeDatabase();
+		final List<Long> progress = new ArrayList<Long>();
+		MetropolisImporter importer = new MetropolisImporter(100, 1000);
+		String csv = "metropolis,continent,population\n" + cities(2550);
+		long rows = importer.importCsv(db.connection, new BufferedReader(new StringReader(csv)),
+				new MetropolisImporter.Progress() {
+					@Override
+					public void imported(long rows, long skipped, long nanos) {
+						progress.add(rows);
+					}
+				});
+		assertEquals(2550, rows);
+		assertEquals(2550, importer.getRows());
+		assertEquals("the header", 1, importer.getSkipped());
+		assertEquals(2550, db.committed.size());
+		assertEquals(row("City 2549", "Europe", 2549L), db.committed.get(2549));
+		assertEquals(26, db.batches);
+		assertEquals(3, db.commits);
+		assertEquals(Arrays.asList(1000L, 2000L, 2550L), progress);
+		assertTrue(db.autoCommit);
+		assertTrue(db.statementClosed);
+		assertEquals(0, db.rollbacks);
+	}
+
+	public void testBlanksAndBadNumbersAreNull() throws IOException, SQLException {
+		FakeDatabase db = new FakeDatabase();
+		MetropolisImporter importer = new MetropolisImporter(10, 10);
+		String csv = "Rome,,2715000\n"
+				+ " ,Asia,lots\n"
+				+ "\"Washington, D.C.\",North America,\n"
+				+ "\"The \"\"Big\"\" Apple\",North America,8400000\n"
+				+ "two,fields\n"
+				+ "four,fields,1,2\n"
+				+ "\"unclosed,Europe,3\n";
+		importer.importCsv(db.connection, new BufferedReader(new StringReader(csv)), null);
+		assertEquals(Arrays.asList(
+				row("Rome", null, 2715000L),
+				row(null, "Asia", null),
+				row("Washington, D.C.", "North America", null),
+				row("The \"Big\" Apple", "North America", 8400000L)), db.committed);
+		assertEquals(3, importer.getSkipped());
+	}
+
+	/**
+	 * A failure part way rolls back the transaction it was in, keeps the
+	 * ones committed before it, restores auto-commit and is passed on.
+	 */
+	private static void assertRolledBack(FakeDatabase db, Exception thrown) {
+		assertSame(db.failure, thrown);
+		assertEquals(1, db.rollbacks);
+		assertEquals(1000, db.committed.size());
+		assertTrue(db.open.isEmpty());
+		assertTrue(db.autoCommit);
+		assertTrue(db.statementClosed);
+	}
+
+	public void testSqlFailureRollsBack() throws IOException {
+		FakeDatabase db = new FakeDatabase();
+		db.failAt = 13;
+		db.failure = new SQLException("Data too long");
+		MetropolisImporter importer = new MetropolisImporter(100, 1000);
+		try {
+			importer.importCsv(db.connection, new BufferedReader(new StringReader(cities(2550))), null);
+			fail("import went on past a failed batch");
+		} catch(SQLException e) {
+			assertRolledBack(db, e);
+		}
+		assertEquals(1000, importer.getRows());
+	}
+
+	public void testRuntimeFailureRollsBack() throws IOException, SQLException {
+		FakeDatabase db = new FakeDatabase();
+		db.failAt = 13;
+		db.failure = new IllegalStateException("driver bug");
+		MetropolisImporter importer = new MetropolisImporter(100, 1000);
+		try {
+			importer.importCsv(db.connection, new BufferedReader(new StringReader(cities(2550))), null);
+			fail("import went on past a failed batch");
+		} catch(IllegalStateException e) {
+			assertRolledBack(db, e);
+		}
+	}
+
+	public void testReadFailureRollsBack() throws SQLException {
+		FakeDatabase db = new FakeDatabase();
+		db.failure = new IOException("disk gone");
+		final String csv = cities(1250);
+		final IOException failure = (IOException) db.failure;
+		Reader broken = new StringReader(csv) {
+			private int read = 0;
+			@Override
+			public int read(char[] cbuf, int off, int len) throws IOException {
+				if(read == csv.length()) throw failure;
+				int n = super.read(cbuf, off, len);
+				read += Math.max(n, 0);
+				return n;
+			}
+		};
+		MetropolisImporter importer = new MetropolisImporter(100, 1000);
+		try {
+			importer.importCsv(db.connection, new BufferedReader(broken), null);
+			fail("import ended normally with the input broken");
+		} catch(IOException e) {
+			assertRolledBack(db, e);
+		}
+	}
+
+	/**
+	 * A rollback that fails too is reported along with the failure that
+	 * caused it, not in its place.
+	 */
+	public void testFailedRollbackKeepsCause() throws IOException {
+		FakeDatabase db = new FakeDatabase();
+		db.failAt = 3;
+		db.failure = new SQLException("Communications link failure");
+		db.rollbackFailure = new SQLException("No operations allowed after connection closed");
+		MetropolisImporter importer = new MetropolisImporter(100, 1000);
+		try {
+			importer.importCsv(db.connection, new BufferedReader(new StringReader(cities(500))), null);
+			fail("import went on past a failed batch");
+		} catch(SQLException e) {
+			assertSame(db.failure, e);
+			assertEquals(1, e.getSuppressed().length);
+			assertSame(db.rollbackFailure, e.getSuppressed()[0]);
+		}
+		assertTrue(db.statementClosed);
+		assertTrue(db.autoCommit);
+	}
+
+	public void testParseLine() {
+		String[] fields = new String[3];
+		assertTrue(MetropolisImporter.parseLine("a,b,c", fields));
+		assertEquals(Arrays.asList("a", "b", "c"), Arrays.asList(fields));
+		assertTrue(MetropolisImporter.parseLine(",,", fields));
+		assertEquals(Arrays.asList("", "", ""), Arrays.asList(fields));
+		assertTrue(MetropolisImporter.parseLine("\"a,\"\"b\"\"\",b\"\"\"\",c", fields));
+		assertEquals(Arrays.asList("a,\"b\"", "b\"", "c"), Arrays.asList(fields));
+		assertFalse(MetropolisImporter.parseLine("a,b", fields));
+		assertFalse(MetropolisImporter.parseLine("a,b,c,d", fields));
+		assertFalse(MetropolisImporter.parseLine("\"a,b,c", fields));
+	}
+}
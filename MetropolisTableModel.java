@@ -1,9 +1,26 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.swing.SwingUtilities;
 import javax.swing.table.AbstractTableModel;
 
 public class MetropolisTableModel extends AbstractTableModel {
@@ -14,8 +31,77 @@ public class MetropolisTableModel extends AbstractTableModel {
 		public static final int POPULATION = 2;
 		public static final String[] COLUMNS = {"Metropolis", "Continent", "Population"};
 		
-		private ResultSet rs;
-		private Connection conn;
+		// Rows are fetched a page at a time, in the background, as the table
+		// asks for them. Only the most recently used pages are kept, so
+		// memory stays the same however many rows a query matches.
+		private static final int PAGE_SIZE = 200;
+		private static final int MAX_PAGES = 16;
+		// A stable order, so OFFSET gives the same rows every time. It is
+		// the order of the by_order index (see metropolises.sql), so pages
+		// come off the index in order instead of from a sort of every row.
+		private static final String ORDER = " ORDER BY metropolis, continent, population";
+		
+		/**
+		 * One page of rows, one array per column.
+		 */
+		private static class Page {
+			private final String[] metropolises = new String[PAGE_SIZE];
+			private final String[] continents = new String[PAGE_SIZE];
+			private final long[] populations = new long[PAGE_SIZE];
+			private int size = 0;
+		}
+		
+		// Pages and requests are only touched on the event dispatch thread.
+		private final Map<Integer, Page> pages = new LinkedHashMap<Integer, Page>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+				return size() > MAX_PAGES;
+			}
+		};
+		private final Set<Integer> requested = new HashSet<Integer>();
+		private final ExecutorService fetcher = Executors.newSingleThreadExecutor(daemonThreads("metropolis pages"));
+		private String where = "";  // WHERE clause of the rows shown
+		private List<Object> whereParams = new ArrayList<Object>();  // and its parameters
+		// Latest search or add submitted, shown or still running; null
+		// before the first and after the rows are emptied.
+		private String queryWhere = null;
+		private List<Object> queryParams;
+		private volatile int generation = 0;  // changes with every query, so late pages are dropped
+		private int rowCount = 0;  // from COUNT(*) when the query ran
+		
+		// Searches and adds run one at a time on their own thread, off the
+		// event thread. Each gets a number; a newer one cancels the
+		// statement of the one before, and late results are dropped.
+		private final ExecutorService queries = Executors.newSingleThreadExecutor(daemonThreads("metropolis queries"));
+		private final AtomicInteger latest = new AtomicInteger();
+		// Statement being run for a search or add. Set, cleared and
+		// cancelled only under runningLock, so a cancel can never reach a
+		// cached statement once its connection has moved on to the next query.
+		private Running running;
+		private final Object runningLock = new Object();
+		// Sends those cancels. Not the query thread, where a cancel would
+		// wait for the very query it is meant to stop, nor the common
+		// pool, which ParallelSolver can keep busy.
+		private final ExecutorService cancels = Executors.newSingleThreadExecutor(daemonThreads("metropolis cancels"));
+		private final ExecutorService imports = Executors.newSingleThreadExecutor(daemonThreads("metropolis import"));
+		
+		/**
+		 * A statement being executed for search or add number id.
+		 */
+		private static class Running {
+			private final int id;
+			private final PreparedStatement stmt;
+			
+			private Running(int id, PreparedStatement stmt) {
+				this.id = id;
+				this.stmt = stmt;
+			}
+		}
+		
+		// One connection for searches and adds, one for page fetches.
+		private static final int POOL_SIZE = 2;
+		private ConnectionPool pool;
 		
 		/**
 		 * Default constructor for MetropolisTableModel.
@@ -24,7 +110,7 @@ public class MetropolisTableModel extends AbstractTableModel {
 		 */
 		public MetropolisTableModel() {
 			super();
-			emptyResultSet();
+			emptyRows();
 			try{
 				Class.forName("com.mysql.jdbc.Driver");
 			} catch(ClassNotFoundException e) {
@@ -33,8 +119,10 @@ public class MetropolisTableModel extends AbstractTableModel {
 				System.exit(-1);
 			}
 			try {
-				conn = DriverManager.getConnection(
-						"jdbc:mysql://" + SERVER, ACCOUNT, PASSWORD);
+				// the database is named in the URL, so no USE per query, and
+				// statements are prepared on the server, so each is parsed once
+				pool = new ConnectionPool("jdbc:mysql://" + SERVER + "/" + DATABASE
+						+ "?useServerPrepStmts=true", ACCOUNT, PASSWORD, POOL_SIZE);
 			} catch (SQLException e) {
 				System.err.println("Could not get a connection from MySQL.");
 				System.exit(-1);
@@ -70,13 +158,7 @@ public class MetropolisTableModel extends AbstractTableModel {
 		 */
 		@Override
 		public int getRowCount() {
-			if(rs == null) return 0;
-			try {
-				rs.last();
-				return rs.getRow();
-			} catch(SQLException e) {
-				return 0;
-			}
+			return rowCount;
 		}
 
 		/**
@@ -87,153 +169,377 @@ public class MetropolisTableModel extends AbstractTableModel {
 		 */
 		@Override
 		public Object getValueAt(int rowIndex, int columnIndex) {
-			if(rs == null) return "";
-			try{
-				rs.first();
-				while(rs.getRow() < rowIndex + 1) { 
-					rs.next();
-				}
-				switch(columnIndex) {
-				case METROPOLIS:
-					return rs.getString("metropolis");
-				case CONTINENT:
-					return rs.getString("continent");
-				case POPULATION:
-					return rs.getInt("population");
-				default:
-					return "";
-				}
-			} catch (SQLException e) {
+			if(rowIndex >= rowCount) return "";
+			Page page = pages.get(rowIndex / PAGE_SIZE);
+			if(page == null) {
+				requestPage(rowIndex / PAGE_SIZE);
 				return "";
-			}		
+			}
+			int i = rowIndex % PAGE_SIZE;
+			if(i >= page.size) return "";
+			switch(columnIndex) {
+			case METROPOLIS:
+				return page.metropolises[i];
+			case CONTINENT:
+				return page.continents[i];
+			case POPULATION:
+				return page.populations[i];
+			default:
+				return "";
+			}
 		}
 		
 		/**
-		 * Add a metropolis to the database with the given arguments.
+		 * Fetch the given page in the background unless it is already on
+		 * its way; its rows are repainted once it arrives.
+		 * @param index Page number, from 0.
+		 */
+		private void requestPage(final int index) {
+			if(!requested.add(index)) return;
+			final int gen = generation;
+			final String query = "SELECT * FROM metropolises" + where + ORDER + " LIMIT ? OFFSET ?";
+			final List<Object> params = new ArrayList<Object>(whereParams);
+			params.add((long) PAGE_SIZE);
+			params.add((long) index * PAGE_SIZE);
+			fetcher.execute(new Runnable() {
+				@Override
+				public void run() {
+					if(gen != generation) return;  // another query is shown now
+					try {
+						final Page page = executeSelect(query, params, 0);
+						SwingUtilities.invokeLater(new Runnable() {
+							@Override
+							public void run() {
+								installPage(gen, index, page);
+							}
+						});
+					} catch (SQLException e) {
+						// left requested, so it is not retried until the next query
+						System.out.println(e.getMessage());
+					}
+				}
+			});
+		}
+		
+		/**
+		 * Keep a fetched page and repaint its rows, unless another query
+		 * has run since it was requested. A short page means rows were
+		 * deleted since the count, so the count is cut to match.
+		 */
+		private void installPage(int gen, int index, Page page) {
+			if(gen != generation) return;
+			requested.remove(index);
+			pages.put(index, page);
+			int first = index * PAGE_SIZE;
+			if(page.size < PAGE_SIZE && first + page.size < rowCount) {
+				rowCount = first + page.size;
+				fireTableDataChanged();
+			} else if(page.size > 0) {
+				fireTableRowsUpdated(first, first + page.size - 1);
+			}
+		}
+		
+		/**
+		 * Add a metropolis to the database with the given arguments, then
+		 * show the rows exactly matching it. Runs in the background.
 		 * @param metropolis Name of the metropolis. If blank, enters a null value.
 		 * @param continent Name of the continent. If blank, enters a null value.
 		 * @param population Population. If blank or not a valid integer, enters a null value.
+		 * @return Future of the number of rows shown; see submit().
 		 */
-		public void add(String metropolis, String continent, String population) {
-			try{
-				Integer.parseInt(population);
-			} catch (NumberFormatException e) {
-				population = "";
-			}
-			String insert = getAddQuery(metropolis, continent, population);
-			String select = getSearchQuery(metropolis, continent, population,
-					PopulationSearchOptions.EQUAL, MatchSearchOptions.EXACT); 
-			try {
-				executeInsert(insert);
-				rs = executeSelect(select);
-				fireTableDataChanged();
-			} catch (SQLException e) {
-				System.out.println(e.getMessage());
-				emptyResultSet();
-			}
+		public CompletableFuture<Long> add(String metropolis, String continent, String population) {
+			Long value = parsePopulation(population);
+			List<Object> insertParams = new ArrayList<Object>();
+			insertParams.add(blank(metropolis) ? null : metropolis);
+			insertParams.add(blank(continent) ? null : continent);
+			insertParams.add(value);
+			List<Object> params = new ArrayList<Object>();
+			String where = getWhereClause(metropolis, continent, value,
+					PopulationSearchOptions.EQUAL, MatchSearchOptions.EXACT, params); 
+			return submit(INSERT, insertParams, where, params);
 		}
 		
 		/**
-		 * Search the database with the given arguments.
+		 * Search the database with the given arguments. Runs in the
+		 * background, cancelling any search still running.
 		 * @param metropolis Name of the metropolis. If blank, enters a null value.
 		 * @param continent Name of the continent. If blank, enters a null value.
 		 * @param population Population. If blank or not a valid integer, enters a null value.
 		 * @param pso Set how to compare database entries to the entered population.
 		 * @param mso Set whether to require matches to be exact matches.
+		 * @return Future of the number of rows found; see submit().
 		 */
-		public void search(String metropolis, String continent, String population,
+		public CompletableFuture<Long> search(String metropolis, String continent, String population,
 						   PopulationSearchOptions pso, MatchSearchOptions mso) {
-			try{ 
-				Integer.parseInt(population);
-			} catch (NumberFormatException e) {
-				population = "";
-			}
+			Long value = parsePopulation(population);
+			List<Object> params = new ArrayList<Object>();
+			String where = getWhereClause(metropolis, continent,
+										  value, pso, mso, params);
+			return submit(null, null, where, params);
+		}	
+		
+		/**
+		 * Queue a query on the query thread and cancel the statement of the
+		 * one before, if it is still running. The query runs the insert,
+		 * if any, even when superseded; then fetches the first page of the
+		 * rows matching where and shows it at once; then, if that page was
+		 * full, counts the rows so the table can scroll through them all.
+		 * @param insert INSERT statement, or null.
+		 * @param insertParams Values for its parameters.
+		 * @param where WHERE clause, or an empty string for every row.
+		 * @param params Values for its parameters.
+		 * @return Future completed on the event thread with the row count
+		 * once it is shown; cancelled if a later query takes over first, or
+		 * completed with the SQLException if one fails, leaving no rows.
+		 */
+		private CompletableFuture<Long> submit(final String insert, final List<Object> insertParams,
+				final String where, final List<Object> params) {
+			final int id = latest.incrementAndGet();
+			final CompletableFuture<Long> result = new CompletableFuture<Long>();
+			queryWhere = where;
+			queryParams = params;
+			cancelRunning(id);
+			queries.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if(insert != null) executeInsert(insert, insertParams);
+						if(id != latest.get()) {
+							result.cancel(false);
+							return;
+						}
+						List<Object> firstParams = new ArrayList<Object>(params);
+						firstParams.add((long) PAGE_SIZE);
+						firstParams.add(0L);
+						final Page first = executeSelect("SELECT * FROM metropolises" + where + ORDER
+								+ " LIMIT ? OFFSET ?", firstParams, id);
+						final boolean complete = first.size < PAGE_SIZE;
+						onEventThread(id, result, new Runnable() {
+							@Override
+							public void run() {
+								showFirstPage(where, params, first);
+								if(complete) result.complete((long) first.size);
+							}
+						});
+						if(complete) return;
+						final long count = executeCount("SELECT COUNT(*) FROM metropolises" + where, params, id);
+						onEventThread(id, result, new Runnable() {
+							@Override
+							public void run() {
+								rowCount = (int) Math.min(count, Integer.MAX_VALUE);
+								fireTableDataChanged();
+								result.complete(count);
+							}
+						});
+					} catch (final SQLException e) {
+						onEventThread(id, result, new Runnable() {
+							@Override
+							public void run() {
+								emptyRows();
+								result.completeExceptionally(e);
+							}
+						});
+					}
+				}
+			});
+			return result;
+		}
+		
+		/**
+		 * Import a CSV file of metropolises in the background with
+		 * MetropolisImporter, on a connection of its own. The table is not
+		 * refreshed while the import runs; once it ends, successfully or
+		 * not, the rows of the current search, if there is one, are queried
+		 * again. With no search the table stays empty, as before.
+		 * @param file CSV file.
+		 * @param batchSize Rows per executeBatch.
+		 * @param commitEvery Rows per transaction.
+		 * @param progress Told on the event thread after every commit, or null.
+		 * @return Future completed on the event thread with the number of
+		 * rows imported, or with the exception that stopped the import.
+		 */
+		public CompletableFuture<Long> importCsv(final File file, final int batchSize, final int commitEvery,
+				final MetropolisImporter.Progress progress) {
+			final CompletableFuture<Long> result = new CompletableFuture<Long>();
+			final MetropolisImporter.Progress onEventThread = (progress == null) ? null
+					: new MetropolisImporter.Progress() {
+				@Override
+				public void imported(final long rows, final long skipped, final long nanos) {
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run() {
+							progress.imported(rows, skipped, nanos);
+						}
+					});
+				}
+			};
+			imports.execute(new Runnable() {
+				@Override
+				public void run() {
+					Throwable failure = null;
+					long rows = 0;
+					try {
+						MetropolisImporter importer = new MetropolisImporter(batchSize, commitEvery);
+						Connection conn = openImportConnection();
+						try {
+							BufferedReader in = new BufferedReader(new FileReader(file), 1 << 16);
+							try {
+								rows = importer.importCsv(conn, in, onEventThread);
+							} finally {
+								in.close();
+							}
+						} finally {
+							conn.close();
+						}
+					} catch (Throwable e) {
+						// anything, so the future is always completed
+						failure = e;
+					}
+					final Throwable error = failure;
+					final long imported = rows;
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run() {
+							if(queryWhere != null) submit(null, null, queryWhere, queryParams);
+							if(error == null) result.complete(imported);
+							else result.completeExceptionally(error);
+						}
+					});
+				}
+			});
+			return result;
+		}
+		
+		/**
+		 * Open a connection for bulk inserts, outside the pool. Unlike the
+		 * pool's, its statements are prepared on the client, so the driver
+		 * can rewrite a batch into multi-row INSERTs.
+		 * @return New connection, to be closed by the caller.
+		 * @throws SQLException
+		 */
+		static Connection openImportConnection() throws SQLException {
+			return DriverManager.getConnection("jdbc:mysql://" + SERVER + "/" + DATABASE
+					+ "?rewriteBatchedStatements=true", ACCOUNT, PASSWORD);
+		}
+		
+		/**
+		 * Run r on the event thread if query id is still the latest by then,
+		 * otherwise cancel its result.
+		 */
+		private void onEventThread(final int id, final CompletableFuture<Long> result, final Runnable r) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					if(id == latest.get()) r.run();
+					else result.cancel(false);
+				}
+			});
+		}
+		
+		/**
+		 * Cancel the statement running for an older query than id, if any.
+		 * Cancelling may mean a round trip to the server, so it is done
+		 * on the cancel thread, holding runningLock so the execution
+		 * cannot end and its statement run the next query meanwhile.
+		 */
+		private void cancelRunning(final int id) {
+			cancels.execute(new Runnable() {
+				@Override
+				public void run() {
+					synchronized(runningLock) {
+						if(running == null || running.id >= id) return;
+						try {
+							running.stmt.cancel();
+						} catch (SQLException e) {
+							// it finished first
+						}
+					}
+				}
+			});
+		}
+		
+		/**
+		 * Show the first page of a new query, dropping the pages of the last.
+		 * Until the count arrives the table has just these rows.
+		 */
+		private void showFirstPage(String where, List<Object> params, Page first) {
+			generation++;
+			pages.clear();
+			requested.clear();
+			this.where = where;
+			whereParams = params;
+			pages.put(0, first);
+			rowCount = first.size;
+			fireTableDataChanged();
+		}
+		
+		private static final String INSERT = "INSERT INTO metropolises VALUES (?, ?, ?)";
+		
+		/**
+		 * Parse a population as entered.
+		 * @param population Text entered.
+		 * @return The number, or null if blank or not a valid integer.
+		 */
+		private static Long parsePopulation(String population) {
 			try {
-				String select = getSearchQuery(metropolis, continent,
-											   population, pso, mso);
-
-				rs = executeSelect(select);
-				fireTableDataChanged();
-			} catch (SQLException e) {
-				System.out.println(e.getMessage());
-				emptyResultSet();
+				return Long.parseLong(population.trim());
+			} catch (NumberFormatException e) {
+				return null;
 			}
-		}	
+		}
+		
+		private static boolean blank(String s) {
+			return s.trim().length() == 0;
+		}
 		
 		/**
-		 * Convert parameters into a valid SQL INSERT statement.
-		 * @param metropolis Name of the metropolis. If blank, enters a null value.
-		 * @param continent Name of the continent. If blank, enters a null value.
-		 * @param population Population. If blank or not a valid integer, enters a null value.
-		 * @return INSERT query.
+		 * Turn text into a LIKE pattern matching it anywhere, with the
+		 * wildcards % and _ in it taken literally. Used with ESCAPE '!'.
 		 */
-		private static String getAddQuery(String metropolis, String continent, String population) {
-			metropolis = sanitizeSQL(metropolis);
-			continent = sanitizeSQL(continent);
-			population = sanitizeSQL(population);
-			
-			StringBuilder sb = new StringBuilder();
-			sb.append("INSERT INTO metropolises VALUES (");
-			metropolis = (metropolis.trim().length() == 0) ? "null" : ("\"" + metropolis + "\"");
-			sb.append(metropolis + ", ");
-			continent = (continent.trim().length() == 0) ? "null" : ("\"" + continent + "\"");
-			sb.append(continent + ", ");
-			population = (population.trim().length() == 0) ? "null" : ("\"" + population + "\"");
-			sb.append(population + ");");		
-			return sb.toString();
+		private static String containing(String s) {
+			return "%" + s.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
 		}
 		
 		/**
-		 * Convert parameters into a valid SQL SELECT statement.
-		 * @param metropolis Name of the metropolis. If blank, enters a null value.
-		 * @param continent Name of the continent. If blank, enters a null value.
-		 * @param population Population. If blank or not a valid integer, enters a null value.
+		 * Convert parameters into the WHERE clause of a SQL SELECT statement,
+		 * with a ? for each value. The SQL depends only on which fields are
+		 * filled in and the options, so each combination is one prepared
+		 * statement.
+		 * @param metropolis Name of the metropolis. If blank, not matched on.
+		 * @param continent Name of the continent. If blank, not matched on.
+		 * @param population Population, or null not to match on it.
 		 * @param pso Set how to compare database entries to the entered population.
 		 * @param mso Set whether to require matches to be exact matches.
-		 * @return SELECT query.
+		 * @param params The values for the ?s are added here, in order.
+		 * @return WHERE clause with a leading space, or an empty string.
 		 */
-		private static String getSearchQuery(String metropolis, String continent, String population,
-									  PopulationSearchOptions pso, MatchSearchOptions exact) {
-			metropolis = sanitizeSQL(metropolis);
-			continent = sanitizeSQL(continent);
-			population = sanitizeSQL(population);
-			
+		private static String getWhereClause(String metropolis, String continent, Long population,
+									  PopulationSearchOptions pso, MatchSearchOptions exact,
+									  List<Object> params) {
 			StringBuilder sb = new StringBuilder();
-			sb.append("SELECT * FROM metropolises");
 			Integer count = 0;
-			if(metropolis.trim().length() != 0) {
+			if(!blank(metropolis)) {
 				sb.append((count == 0) ? " WHERE " : " AND ");
 				count++;
-				if(exact == MatchSearchOptions.EXACT) { sb.append("metropolis = \"" + metropolis + "\""); }
-				else {      sb.append("metropolis LIKE \"%" + metropolis + "%\""); }	
+				if(exact == MatchSearchOptions.EXACT) { sb.append("metropolis = ?"); params.add(metropolis); }
+				else {      sb.append("metropolis LIKE ? ESCAPE '!'"); params.add(containing(metropolis)); }	
 			}
-			if(continent.trim().length() != 0) {
+			if(!blank(continent)) {
 				sb.append((count == 0) ? " WHERE " : " AND ");
 				count++;
-				if(exact == MatchSearchOptions.EXACT) { sb.append("continent = \"" + continent + "\""); }
-				else {      sb.append("continent LIKE \"%" + continent + "%\""); }
+				if(exact == MatchSearchOptions.EXACT) { sb.append("continent = ?"); params.add(continent); }
+				else {      sb.append("continent LIKE ? ESCAPE '!'"); params.add(containing(continent)); }
 			}
-			if(population.trim().length() != 0) {
+			if(population != null) {
 				sb.append((count == 0) ? " WHERE " : " AND ");
 				count++;
-				if(pso == PopulationSearchOptions.EQUAL) { sb.append("population = "); }
-				else if(pso == PopulationSearchOptions.SMALLER){ sb.append("population < "); }
-				else if(pso == PopulationSearchOptions.LARGER) { sb.append("population > "); }
-				sb.append(population);
+				if(pso == PopulationSearchOptions.EQUAL) { sb.append("population = ?"); }
+				else if(pso == PopulationSearchOptions.SMALLER){ sb.append("population < ?"); }
+				else if(pso == PopulationSearchOptions.LARGER) { sb.append("population > ?"); }
+				params.add(population);
 			}
-			sb.append(";");			
 			return sb.toString();
 		}
-		
-		/**
-		 * Sanitize string parameters for use in SQL queries by removing 
-		 * the characters \ " ' % _ ; . ( ) [ ]
-		 * @param s String to sanitize.
-		 * @return Cleaned version of string.
-		 */
-		public static String sanitizeSQL(String s) {
-			return s.replaceAll("[\\\\\"\'%_;\\.\\(\\)\\[\\]]", "");
-		}
 
 		private static final String SERVER = "mysql-user.stanford.edu";
 		private static final String ACCOUNT = "ccs108samath";
@@ -241,35 +547,161 @@ public class MetropolisTableModel extends AbstractTableModel {
 		private static final String DATABASE = "c_cs108_samath";
 		
 		/**
-		 * Get a Statement from the connection and execute the given query.
+		 * Take a connection from the pool, run the given query on its
+		 * prepared statement and load the rows, at most a page, into the
+		 * column arrays of a Page. The ResultSet is closed and the
+		 * connection given back before returning.
 		 * @param query SELECT statement. Should not update the database.
-		 * @return ResultSet from java#sql#Statement#executeQuery.
+		 * @param params Values for its parameters.
+		 * @param id Number of the search or add running it, which a later
+		 * one may cancel, or 0 for a page fetch.
+		 * @return Page of rows.
 		 * @throws SQLException
 		 */
-		private ResultSet executeSelect(String query) throws SQLException {
-			Statement stmt = conn.createStatement();
-			stmt.executeQuery("USE " + DATABASE);
-			ResultSet set = stmt.executeQuery(query);
-			return set;
+		private Page executeSelect(String query, List<Object> params, int id) throws SQLException {
+			ConnectionPool.Pooled pooled = pool.take();
+			try {
+				ResultSet set = executeQuery(prepare(pooled, query, params), id);
+				try {
+					return loadRows(set);
+				} finally {
+					set.close();
+				}
+			} finally {
+				pool.release(pooled);
+			}
 		}
 		
 		/**
-		 * Get a Statement from the connection and execute the given query.
+		 * Read the rows of set, up to a page, into a new Page.
+		 * @param set ResultSet positioned before its first row.
+		 * @return Page of rows.
+		 * @throws SQLException
+		 */
+		private static Page loadRows(ResultSet set) throws SQLException {
+			int metropolisColumn = set.findColumn("metropolis");
+			int continentColumn = set.findColumn("continent");
+			int populationColumn = set.findColumn("population");
+			Page page = new Page();
+			while(page.size < PAGE_SIZE && set.next()) {
+				page.metropolises[page.size] = set.getString(metropolisColumn);
+				page.continents[page.size] = set.getString(continentColumn);
+				page.populations[page.size] = set.getLong(populationColumn);
+				page.size++;
+			}
+			return page;
+		}
+		
+		/**
+		 * Run the given query on a pooled prepared statement.
+		 * @param query SELECT COUNT(*) statement.
+		 * @param params Values for its parameters.
+		 * @param id Number of the search or add running it.
+		 * @return The count.
+		 * @throws SQLException
+		 */
+		private long executeCount(String query, List<Object> params, int id) throws SQLException {
+			ConnectionPool.Pooled pooled = pool.take();
+			try {
+				ResultSet set = executeQuery(prepare(pooled, query, params), id);
+				try {
+					return set.next() ? set.getLong(1) : 0;
+				} finally {
+					set.close();
+				}
+			} finally {
+				pool.release(pooled);
+			}
+		}
+		
+		/**
+		 * Run the given update on a pooled prepared statement.
 		 * @param query INSERT statement.
+		 * @param params Values for its parameters; null enters a null value.
 		 * @throws SQLException
 		 */
-		private void executeInsert(String query) throws SQLException {
-			Statement stmt = conn.createStatement();
-			stmt.executeQuery("USE " + DATABASE);
-			stmt.executeUpdate(query);
+		private void executeInsert(String query, List<Object> params) throws SQLException {
+			ConnectionPool.Pooled pooled = pool.take();
+			try {
+				prepare(pooled, query, params).executeUpdate();
+			} finally {
+				pool.release(pooled);
+			}
+		}
+		
+		/**
+		 * Execute stmt, letting a later search or add than id cancel it
+		 * meanwhile.
+		 */
+		private ResultSet executeQuery(PreparedStatement stmt, int id) throws SQLException {
+			if(id == 0) return stmt.executeQuery();
+			Running r = new Running(id, stmt);
+			synchronized(runningLock) {
+				running = r;
+			}
+			try {
+				return stmt.executeQuery();
+			} finally {
+				synchronized(runningLock) {
+					if(running == r) running = null;
+				}
+			}
+		}
+		
+		/**
+		 * Get the connection's statement for query and set its parameters.
+		 * Values are Strings or Longs; null is sent as a SQL null.
+		 */
+		private static PreparedStatement prepare(ConnectionPool.Pooled pooled, String query,
+				List<Object> params) throws SQLException {
+			PreparedStatement stmt = pooled.prepare(query);
+			for(int i = 0; i < params.size(); i++) {
+				Object value = params.get(i);
+				if(value == null) stmt.setNull(i + 1, Types.VARCHAR);
+				else if(value instanceof Long) stmt.setLong(i + 1, (Long) value);
+				else stmt.setString(i + 1, (String) value);
+			}
+			return stmt;
+		}
+		
+		/**
+		 * Stop fetching pages and close the connections and their
+		 * statements. The model shows nothing new after this.
+		 */
+		public void close() {
+			imports.shutdownNow();
+			queries.shutdownNow();
+			cancels.shutdownNow();
+			fetcher.shutdownNow();
+			if(pool != null) pool.close();
+		}
+		
+		private static ThreadFactory daemonThreads(final String name) {
+			return new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, name);
+					t.setDaemon(true);
+					return t;
+				}
+			};
 		}
 		
 		/**
-		 * Empty Table Model by replacing local ResultSet with a null value.
+		 * Empty Table Model by dropping the loaded pages and any still
+		 * being fetched.
 		 * Used for initialization and handling malformed queries.
 		 */
-		private void emptyResultSet() {
-			rs = null;
+		private void emptyRows() {
+			generation++;
+			pages.clear();
+			requested.clear();
+			where = "";
+			whereParams = new ArrayList<Object>();
+			queryWhere = null;
+			queryParams = null;
+			rowCount = 0;
+			fireTableDataChanged();
 		}
 		
 		public enum PopulationSearchOptions { 
@@ -0,0 +1,119 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Counts Sudoku solutions on a ForkJoinPool.
+ * CS108 Stanford.
+ *
+ * The top levels of the search tree are split into subtasks, each on
+ * its own copy of the grid. Below that, each subtask runs the ordinary
+ * Sudoku search. All subtasks add to one shared counter, and every
+ * search stops as soon as that counter reaches the solution limit.
+ *
+ * Subtasks finish in no fixed order, so when there is more than one
+ * solution, the one getSolution() returns is found again by a sequential
+ * search for the first solution alone. It is then the same on every run
+ * and the same as BacktrackingSolver's, for TEXT and CSV output. Finding
+ * only the first of several solutions is quick next to counting them.
+ */
+public class ParallelSolver implements SudokuSolver {
+
+	// Never split deeper than this, however idle the pool is.
+	private static final int MAX_SPLIT_DEPTH = 6;
+	// Keep splitting while the worker has at most this many queued tasks.
+	private static final int SURPLUS_TASKS = 2;
+
+	private final ForkJoinPool pool;
+	private int[][] solution;
+
+	/**
+	 * Solver running on the common pool.
+	 */
+	public ParallelSolver() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public ParallelSolver(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public int solve(int[][] grid, int limit) {
+		Search search = new Search(limit);
+		int count = pool.invoke(search.new CountTask(grid, 0));
+		if(count > 1) {
+			Sudoku first = new Sudoku(grid);
+			first.setMaxSolutions(1);
+			first.solve();
+			solution = first.getSolution();
+		} else {
+			solution = search.first.get();  // the only one, if any
+		}
+		return Math.min(count, limit);
+	}
+
+	@Override
+	public int[][] getSolution() {
+		return solution;
+	}
+
+	/**
+	 * State shared by all the subtasks of one solve() call.
+	 */
+	private static class Search {
+		private final int limit;
+		private final AtomicInteger found = new AtomicInteger();
+		private final AtomicReference<int[][]> first = new AtomicReference<int[][]>();
+
+		private Search(int limit) {
+			this.limit = limit;
+		}
+
+		private class CountTask extends RecursiveTask<Integer> {
+			private static final long serialVersionUID = 1L;
+
+			private final int[][] grid;
+			private final int depth;
+
+			private CountTask(int[][] grid, int depth) {
+				this.grid = grid;
+				this.depth = depth;
+			}
+
+			@Override
+			protected Integer compute() {
+				if(found.get() >= limit) return 0;
+				Sudoku sudoku = new Sudoku(grid);
+				sudoku.setOrdering(Sudoku.Ordering.DYNAMIC);
+				if(depth < MAX_SPLIT_DEPTH && getSurplusQueuedTaskCount() <= SURPLUS_TASKS) {
+					List<int[][]> children = sudoku.branches();
+					if(children != null) return split(children);
+					sudoku = new Sudoku(grid);  // already complete, count it below
+				}
+				sudoku.setSharedCount(found);
+				sudoku.setMaxSolutions(limit);
+				int count = sudoku.solve();
+				if(count > 0 && first.get() == null) {
+					first.compareAndSet(null, sudoku.getSolution());
+				}
+				return count;
+			}
+
+			private int split(List<int[][]> children) {
+				List<CountTask> tasks = new ArrayList<CountTask>(children.size());
+				for(int[][] child : children) {
+					tasks.add(new CountTask(child, depth + 1));
+				}
+				int count = 0;
+				for(CountTask task : invokeAll(tasks)) {
+					count += task.join();
+				}
+				return count;
+			}
+		}
+	}
+}
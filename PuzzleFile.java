@@ -0,0 +1,473 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * Compact binary storage for puzzles and solutions.
+ * CS108 Stanford.
+ *
+ * A file is an 8-byte header -- the magic "SDKB", a version byte, the
+ * grid side and two spare bytes -- followed by one record per grid.
+ * A record is a bitmap of which cells hold a value, one bit per cell
+ * row by row, then those values in order, packed two to a byte for
+ * sides up to 9 and one to a byte above that. A 25-clue 9x9 puzzle
+ * takes 24 bytes against 82 for its text line; a full solution takes
+ * 52.
+ *
+ * A file of version 2 holds results rather than puzzles: each record
+ * starts with a 4-byte count, the number of solutions of the puzzle the
+ * grid came from, or -1 where the input was not a puzzle.
+ *
+ * Records vary in length, so opening a file scans the bitmaps once to
+ * build an offset index; after that any record is read with a single
+ * positioned read. Appends are buffered and can follow reads on the
+ * same open file. A record cut short by a crash is dropped on open and
+ * overwritten by the next append. A file can also be opened read-only,
+ * e.g. while another process is still appending to it; a handle that
+ * never appended leaves the file as it is when closed.
+ */
+public class PuzzleFile implements Closeable {
+
+	private static final int MAGIC = ('S' << 24) | ('D' << 16) | ('K' << 8) | 'B';
+	private static final int VERSION = 1;
+	private static final int COUNTED_VERSION = 2;  // records start with a count
+	private static final int COUNT_BYTES = 4;
+	private static final int HEADER = 8;
+	private static final int WRITE_BUFFER = 1 << 16;
+
+	private final FileChannel channel;
+	private final boolean writable;
+	private final boolean counted;
+	private final int side, cells, bitmapBytes;
+	private final int prefix;  // bytes before each record's bitmap
+	private long[] offsets = new long[1024];  // start of each record
+	private long count = 0;
+	private long end;  // where the next record goes
+	private boolean appended = false;
+	private final ByteBuffer pending = ByteBuffer.allocate(WRITE_BUFFER);
+	private final ByteBuffer record;
+	private final byte[] encoded;
+
+	private PuzzleFile(FileChannel channel, boolean writable, int side, boolean counted) {
+		this.channel = channel;
+		this.writable = writable;
+		this.side = side;
+		this.counted = counted;
+		prefix = counted ? COUNT_BYTES : 0;
+		cells = side * side;
+		bitmapBytes = (cells + 7) / 8;
+		encoded = new byte[prefix + maxRecordBytes(side)];
+		record = ByteBuffer.wrap(encoded);
+	}
+
+	/**
+	 * Creates an empty file for grids of the given side, replacing any
+	 * file already there.
+	 */
+	public static PuzzleFile create(File file, int side) throws IOException {
+		return create(file, side, false);
+	}
+
+	/**
+	 * Creates an empty file for grids of the given side, replacing any
+	 * file already there.
+	 * @param counted true if each grid is stored with a count, see
+	 * append(int[][], int)
+	 */
+	public static PuzzleFile create(File file, int side, boolean counted) throws IOException {
+		byte[] bytes = header(side, counted);
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		ByteBuffer header = ByteBuffer.wrap(bytes);
+		while(header.hasRemaining()) channel.write(header, header.position());
+		PuzzleFile f = new PuzzleFile(channel, true, side, counted);
+		f.end = HEADER;
+		return f;
+	}
+
+	/**
+	 * Writes the header for grids of the given side to out. Followed by
+	 * records from encode() -- the ones that take a count if counted is
+	 * set -- this makes a stream that open() can read once it is saved to
+	 * a file, e.g. output piped from SudokuBatch.
+	 */
+	public static void writeHeader(OutputStream out, int side, boolean counted) throws IOException {
+		out.write(header(side, counted));
+	}
+
+	private static byte[] header(int side, boolean counted) {
+		if(side < 1 || side > 255) throw new IllegalArgumentException("Unsupported grid side " + side);
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		header.putInt(MAGIC).put((byte) (counted ? COUNTED_VERSION : VERSION)).put((byte) side)
+				.putShort((short) 0);
+		return header.array();
+	}
+
+	/**
+	 * Opens an existing file for reading and appending, indexing its
+	 * records.
+	 */
+	public static PuzzleFile open(File file) throws IOException {
+		return open(file, true);
+	}
+
+	/**
+	 * Opens an existing file, indexing its records.
+	 * @param writable false to open it for reading only; append() then
+	 * fails
+	 */
+	public static PuzzleFile open(File file, boolean writable) throws IOException {
+		FileChannel channel = writable
+				? FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+				: FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			while(header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+				// keep reading
+			}
+			header.flip();
+			if(header.remaining() < HEADER || header.getInt() != MAGIC) {
+				throw new IOException(file + " is not a puzzle file");
+			}
+			int version = header.get();
+			if(version != VERSION && version != COUNTED_VERSION) {
+				throw new IOException("Unsupported puzzle file version " + version);
+			}
+			PuzzleFile f = new PuzzleFile(channel, writable, header.get() & 0xff,
+					version == COUNTED_VERSION);
+			f.index();
+			return f;
+		} catch(IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Walks the records from the header on, noting where each starts.
+	 * Only the bitmaps are looked at; each gives its record's length.
+	 */
+	private void index() throws IOException {
+		long length = channel.size();
+		// not closed: that would close the channel
+		InputStream in = new BufferedInputStream(Channels.newInputStream(channel.position(HEADER)), 1 << 16);
+		byte[] head = new byte[prefix + bitmapBytes];  // count, if any, and bitmap
+		long at = HEADER;
+		while(true) {
+			int got = readFully(in, head);
+			if(got < head.length) break;
+			int values = 0;
+			for(int i = prefix; i < head.length; i++) values += Integer.bitCount(head[i] & 0xff);
+			long next = at + head.length + valueBytes(values);
+			if(next > length) break;  // cut short
+			long skip = next - at - head.length;
+			while(skip > 0) skip -= in.skip(skip);
+			addOffset(at);
+			at = next;
+		}
+		end = at;
+	}
+
+	private static int readFully(InputStream in, byte[] b) throws IOException {
+		int n = 0;
+		while(n < b.length) {
+			int got = in.read(b, n, b.length - n);
+			if(got < 0) break;
+			n += got;
+		}
+		return n;
+	}
+
+	public int getSide() {
+		return side;
+	}
+
+	/**
+	 * True if each grid is stored with a count.
+	 */
+	public boolean isCounted() {
+		return counted;
+	}
+
+	/**
+	 * Number of grids in the file, including appended ones not yet flushed.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Reads grid number index (from 0) into grid, which must have this
+	 * file's side.
+	 * @return grid
+	 */
+	public int[][] read(long index, int[][] grid) throws IOException {
+		if(index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Grid " + index + " of " + count);
+		}
+		if(grid.length != side) {
+			throw new IllegalArgumentException("Expected a " + side + "x" + side
+					+ " grid, but got " + grid.length + " rows");
+		}
+		flush();
+		long at = offsets[(int) index];
+		long next = (index + 1 < count) ? offsets[(int) index + 1] : end;
+		record.clear().limit((int) (next - at));
+		while(record.hasRemaining()) {
+			if(channel.read(record, at + record.position()) < 0) throw new EOFException();
+		}
+		decode(encoded, prefix, grid);
+		return grid;
+	}
+
+	/**
+	 * Reads the count stored with grid number index (from 0).
+	 * @throws IllegalStateException if the file holds no counts
+	 */
+	public int readCount(long index) throws IOException {
+		if(!counted) throw new IllegalStateException("Puzzle file holds no counts");
+		if(index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Grid " + index + " of " + count);
+		}
+		flush();
+		record.clear().limit(COUNT_BYTES);
+		long at = offsets[(int) index];
+		while(record.hasRemaining()) {
+			if(channel.read(record, at + record.position()) < 0) throw new EOFException();
+		}
+		return decodeCount(encoded, 0);
+	}
+
+	/**
+	 * Adds grid at the end of the file. Written out when the buffer
+	 * fills, and by flush() and close().
+	 * @throws IllegalStateException if the file needs a count with each grid
+	 */
+	public void append(int[][] grid) throws IOException {
+		if(counted) throw new IllegalStateException("Puzzle file needs a count with each grid");
+		checkAppend(grid);
+		appendEncoded(encode(grid, encoded, 0));
+	}
+
+	/**
+	 * Adds grid with its count at the end of the file.
+	 * @param count number of solutions, or -1 for input that was not a puzzle
+	 * @throws IllegalStateException if the file holds no counts
+	 */
+	public void append(int[][] grid, int count) throws IOException {
+		if(!counted) throw new IllegalStateException("Puzzle file holds no counts");
+		checkAppend(grid);
+		appendEncoded(encode(grid, count, encoded, 0));
+	}
+
+	private void checkAppend(int[][] grid) throws IOException {
+		if(!writable) throw new IOException("Puzzle file opened read-only");
+		if(grid.length != side) {
+			throw new IllegalArgumentException("Expected a " + side + "x" + side
+					+ " grid, but got " + grid.length + " rows");
+		}
+	}
+
+	private void appendEncoded(int n) throws IOException {
+		if(pending.remaining() < n) flush();
+		pending.put(encoded, 0, n);
+		addOffset(end);
+		end += n;
+		appended = true;
+	}
+
+	public void flush() throws IOException {
+		if(pending.position() == 0) return;
+		pending.flip();
+		long at = end - pending.remaining();
+		while(pending.hasRemaining()) {
+			at += channel.write(pending, at);
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Writes out any appends and closes the file. If this handle
+	 * appended, the file is cut at the end of its last record, so nothing
+	 * of a record cut short is left after it; otherwise the file is left
+	 * as it is, records others appended meanwhile included.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+			if(appended) channel.truncate(end);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void addOffset(long at) {
+		if(count == offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		offsets[(int) count++] = at;
+	}
+
+	/**
+	 * Bytes taken by n packed values.
+	 */
+	private int valueBytes(int n) {
+		return (side <= 9) ? (n + 1) / 2 : n;
+	}
+
+	/**
+	 * Largest record for the given side: every cell filled.
+	 */
+	public static int maxRecordBytes(int side) {
+		int cells = side * side;
+		return (cells + 7) / 8 + ((side <= 9) ? (cells + 1) / 2 : cells);
+	}
+
+	/**
+	 * Encodes grid as one record into out from offset, which needs room
+	 * for maxRecordBytes(side).
+	 * @return number of bytes written
+	 */
+	public static int encode(int[][] grid, byte[] out, int offset) {
+		int side = grid.length, cells = side * side;
+		int bitmapBytes = (cells + 7) / 8;
+		Arrays.fill(out, offset, offset + bitmapBytes, (byte) 0);
+		int at = offset + bitmapBytes;
+		boolean high = true;  // next nibble goes in the high half
+		for(int cell = 0; cell < cells; cell++) {
+			int value = grid[cell / side][cell % side];
+			if(value == 0) continue;
+			if(value < 0 || value > side) {
+				throw new IllegalArgumentException("Value " + value + " out of range for side " + side);
+			}
+			out[offset + cell / 8] |= (byte) (0x80 >>> (cell % 8));
+			if(side > 9) {
+				out[at++] = (byte) value;
+			} else if(high) {
+				out[at] = (byte) (value << 4);
+				high = false;
+			} else {
+				out[at++] |= (byte) value;
+				high = true;
+			}
+		}
+		return (high ? at : at + 1) - offset;
+	}
+
+	/**
+	 * Encodes count and grid as one record of a counted file into out
+	 * from offset, which needs room for 4 + maxRecordBytes(side).
+	 * @return number of bytes written
+	 */
+	public static int encode(int[][] grid, int count, byte[] out, int offset) {
+		for(int i = 0; i < COUNT_BYTES; i++) out[offset + i] = (byte) (count >>> (24 - 8 * i));
+		return COUNT_BYTES + encode(grid, out, offset + COUNT_BYTES);
+	}
+
+	/**
+	 * Reads the count at the start of a counted file's record.
+	 */
+	public static int decodeCount(byte[] in, int offset) {
+		int count = 0;
+		for(int i = 0; i < COUNT_BYTES; i++) count = (count << 8) | (in[offset + i] & 0xff);
+		return count;
+	}
+
+	/**
+	 * Decodes the record at offset into grid, whose side sets the layout.
+	 * For a counted file's record, offset is just past the count.
+	 * @return number of bytes read
+	 */
+	public static int decode(byte[] in, int offset, int[][] grid) {
+		int side = grid.length, cells = side * side;
+		int at = offset + (cells + 7) / 8;
+		boolean high = true;
+		for(int cell = 0; cell < cells; cell++) {
+			int value = 0;
+			if((in[offset + cell / 8] & (0x80 >>> (cell % 8))) != 0) {
+				if(side > 9) {
+					value = in[at++] & 0xff;
+				} else if(high) {
+					value = (in[at] >> 4) & 0xf;
+					high = false;
+				} else {
+					value = in[at++] & 0xf;
+					high = true;
+				}
+			}
+			grid[cell / side][cell % side] = value;
+		}
+		return (high ? at : at + 1) - offset;
+	}
+
+	/**
+	 * Usage:
+	 *   PuzzleFile encode text binary   -- 81-character lines to a 9x9 file
+	 *   PuzzleFile decode binary text   -- and back, '.' for blanks, each
+	 *                                      followed by its count if stored
+	 *   PuzzleFile get binary index     -- print one grid with gridToText
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length != 3) {
+			System.err.println("Usage: PuzzleFile encode text binary | decode binary text | get binary index");
+			System.exit(1);
+		}
+		long start = System.nanoTime();
+		int[][] grid = new int[Sudoku.SIZE][Sudoku.SIZE];
+		if(args[0].equals("encode")) {
+			BufferedReader in = new BufferedReader(new FileReader(args[1]));
+			PuzzleFile out = create(new File(args[2]), Sudoku.SIZE);
+			long skipped = 0;
+			try {
+				String line;
+				while((line = in.readLine()) != null) {
+					if(line.trim().length() == 0 || line.startsWith("#")) continue;
+					if(Sudoku.lineToGrid(line, grid)) out.append(grid);
+					else skipped++;
+				}
+			} finally {
+				in.close();
+				out.close();
+			}
+			long text = new File(args[1]).length(), binary = new File(args[2]).length();
+			System.err.printf("%d grids (%d malformed lines skipped): %d bytes of text,"
+					+ " %d binary, %.1fx smaller, %.3fs%n", out.getCount(), skipped, text, binary,
+					(double) text / binary, (System.nanoTime() - start) / 1e9);
+		} else if(args[0].equals("decode")) {
+			PuzzleFile in = open(new File(args[1]), false);
+			Writer out = new BufferedWriter(new FileWriter(args[2]));
+			try {
+				for(long i = 0; i < in.getCount(); i++) {
+					in.read(i, grid);
+					for(int[] row : grid) {
+						for(int value : row) out.write((value == 0) ? '.' : (char) ('0' + value));
+					}
+					if(in.isCounted()) {
+						int count = in.readCount(i);
+						out.write((count < 0) ? " error" : " " + count);
+					}
+					out.write('\n');
+				}
+			} finally {
+				in.close();
+				out.close();
+			}
+			System.err.printf("%d grids in %.3fs%n", in.getCount(), (System.nanoTime() - start) / 1e9);
+		} else if(args[0].equals("get")) {
+			PuzzleFile in = open(new File(args[1]), false);
+			try {
+				grid = new int[in.getSide()][in.getSide()];
+				long index = Long.parseLong(args[2]);
+				System.out.println(Sudoku.gridToText(in.read(index, grid)));
+				if(in.isCounted()) System.out.println("solutions: " + in.readCount(index));
+			} finally {
+				in.close();
+			}
+		} else {
+			System.err.println("Unknown command " + args[0]);
+			System.exit(1);
+		}
+	}
+}
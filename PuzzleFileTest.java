@@ -0,0 +1,280 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/*
+ * Tests for PuzzleFile.
+ * CS108 Stanford.
+ */
+public class PuzzleFileTest extends TestCase {
+
+	private File file;
+
+	@Override
+	protected void setUp() throws IOException {
+		file = File.createTempFile("puzzles", ".sdkb");
+	}
+
+	@Override
+	protected void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * The built-in grids, their solutions, an empty grid and a full
+	 * one: every record length from a bare bitmap to every cell filled.
+	 */
+	private static List<int[][]> grids() {
+		List<int[][]> grids = new ArrayList<int[][]>();
+		for(int[][] grid : new int[][][] { Sudoku.easyGrid, Sudoku.mediumGrid, Sudoku.hardGrid }) {
+			grids.add(grid);
+			Sudoku s = new Sudoku(grid);
+			s.solve();
+			grids.add(s.getSolution());
+		}
+		grids.add(Sudoku.unsolvableGrid);
+		grids.add(new int[Sudoku.SIZE][Sudoku.SIZE]);
+		return grids;
+	}
+
+	private static void assertSameGrid(int[][] expected, int[][] actual) {
+		assertEquals(Sudoku.gridToText(expected), Sudoku.gridToText(actual));
+	}
+
+	private static void assertReads(PuzzleFile f, List<int[][]> grids) throws IOException {
+		assertEquals(grids.size(), f.getCount());
+		int[][] grid = new int[f.getSide()][f.getSide()];
+		for(int i = grids.size() - 1; i >= 0; i--) {
+			assertSameGrid(grids.get(i), f.read(i, grid));
+		}
+	}
+
+	public void testRoundTrip() throws IOException {
+		List<int[][]> grids = grids();
+		PuzzleFile f = PuzzleFile.create(file, Sudoku.SIZE);
+		for(int[][] grid : grids) f.append(grid);
+		assertReads(f, grids);  // before anything is flushed
+		f.close();
+		f = PuzzleFile.open(file);
+		try {
+			assertEquals(Sudoku.SIZE, f.getSide());
+			assertFalse(f.isCounted());
+			assertReads(f, grids);
+		} finally {
+			f.close();
+		}
+	}
+
+	/**
+	 * Sides above 9 store one value to a byte.
+	 */
+	public void testLargeSide() throws IOException {
+		List<int[][]> grids = new ArrayList<int[][]>();
+		int[][] grid = new int[16][16];
+		for(int i = 0; i < 16; i++) {
+			for(int j = 0; j < 16; j++) {
+				if((i + j) % 3 != 0) grid[i][j] = 1 + (i * 4 + i / 4 + j) % 16;
+			}
+		}
+		grids.add(grid);
+		grids.add(new int[16][16]);
+		PuzzleFile f = PuzzleFile.create(file, 16);
+		for(int[][] g : grids) f.append(g);
+		f.close();
+		f = PuzzleFile.open(file);
+		try {
+			assertReads(f, grids);
+		} finally {
+			f.close();
+		}
+	}
+
+	public void testCountedRoundTrip() throws IOException {
+		List<int[][]> grids = grids();
+		PuzzleFile f = PuzzleFile.create(file, Sudoku.SIZE, true);
+		for(int i = 0; i < grids.size(); i++) f.append(grids.get(i), i - 1);
+		f.close();
+		f = PuzzleFile.open(file, false);
+		try {
+			assertTrue(f.isCounted());
+			assertReads(f, grids);
+			for(int i = 0; i < grids.size(); i++) assertEquals(i - 1, f.readCount(i));
+		} finally {
+			f.close();
+		}
+	}
+
+	public void testCountsMustMatchFile() throws IOException {
+		PuzzleFile f = PuzzleFile.create(file, Sudoku.SIZE);
+		try {
+			f.append(Sudoku.easyGrid, 1);
+			fail("appended a count to a file without counts");
+		} catch(IllegalStateException expected) {
+			// as it should
+		}
+		try {
+			f.readCount(0);
+			fail("read a count from a file without counts");
+		} catch(IllegalStateException expected) {
+			// as it should
+		}
+		f.close();
+		f = PuzzleFile.create(file, Sudoku.SIZE, true);
+		try {
+			f.append(Sudoku.easyGrid);
+			fail("appended a grid without its count");
+		} catch(IllegalStateException expected) {
+			// as it should
+		} finally {
+			f.close();
+		}
+	}
+
+	public void testWrongSideRejected() throws IOException {
+		PuzzleFile f = PuzzleFile.create(file, Sudoku.SIZE);
+		try {
+			f.append(Sudoku.easyGrid);
+			try {
+				f.append(new int[4][4]);
+				fail("appended a 4x4 grid to a 9x9 file");
+			} catch(IllegalArgumentException expected) {
+				// as it should
+			}
+			try {
+				f.read(0, new int[4][4]);
+				fail("read a 9x9 grid into a 4x4 one");
+			} catch(IllegalArgumentException expected) {
+				// as it should
+			}
+			assertEquals(1, f.getCount());
+		} finally {
+			f.close();
+		}
+	}
+
+	public void testReadOnly() throws IOException {
+		PuzzleFile f = PuzzleFile.create(file, Sudoku.SIZE);
+		f.append(Sudoku.easyGrid);
+		f.close();
+		long length = file.length();
+		f = PuzzleFile.open(file, false);
+		try {
+			f.append(Sudoku.hardGrid);
+			fail("appended to a read-only file");
+		} catch(IOException expected) {
+			// as it should
+		} finally {
+			f.close();
+		}
+		assertEquals(length, file.length());
+	}
+
+	/**
+	 * A handle that only read leaves alone what another appended after
+	 * it was opened, read-only or not.
+	 */
+	public void testReaderLeavesOthersAppends() throws IOException {
+		for(boolean writable : new boolean[] { false, true }) {
+			List<int[][]> grids = grids();
+			PuzzleFile writer = PuzzleFile.create(file, Sudoku.SIZE);
+			writer.append(grids.get(0));
+			writer.flush();
+			PuzzleFile reader = PuzzleFile.open(file, writable);
+			assertEquals(1, reader.getCount());
+			for(int[][] grid : grids.subList(1, grids.size())) writer.append(grid);
+			writer.flush();
+			reader.close();
+			writer.close();
+			PuzzleFile f = PuzzleFile.open(file, false);
+			try {
+				assertReads(f, grids);
+			} finally {
+				f.close();
+			}
+		}
+	}
+
+	/**
+	 * A record cut short, as by a crash, is dropped on open, and the
+	 * next append takes its place.
+	 */
+	public void testCutRecordDropped() throws IOException {
+		List<int[][]> grids = grids();
+		PuzzleFile f = PuzzleFile.create(file, Sudoku.SIZE);
+		f.append(grids.get(0));
+		f.close();
+		long length = file.length();
+		byte[] record = new byte[PuzzleFile.maxRecordBytes(Sudoku.SIZE)];
+		int n = PuzzleFile.encode(grids.get(1), record, 0);
+		OutputStream out = new FileOutputStream(file, true);
+		try {
+			out.write(record, 0, n - 3);
+		} finally {
+			out.close();
+		}
+		f = PuzzleFile.open(file);
+		assertEquals(1, f.getCount());
+		f.close();
+		assertEquals("a handle that did not append leaves the cut record", length + n - 3, file.length());
+		f = PuzzleFile.open(file);
+		f.append(grids.get(2));
+		f.close();
+		f = PuzzleFile.open(file, false);
+		try {
+			assertReads(f, Arrays.asList(grids.get(0), grids.get(2)));
+		} finally {
+			f.close();
+		}
+	}
+
+	/**
+	 * The stream writeHeader() and encode() make for SudokuBatch reads
+	 * back like a file PuzzleFile wrote.
+	 */
+	public void testStreamMatchesFile() throws IOException {
+		List<int[][]> grids = grids();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PuzzleFile.writeHeader(bytes, Sudoku.SIZE, true);
+		byte[] record = new byte[4 + PuzzleFile.maxRecordBytes(Sudoku.SIZE)];
+		for(int i = 0; i < grids.size(); i++) {
+			int n = PuzzleFile.encode(grids.get(i), i, record, 0);
+			assertEquals(i, PuzzleFile.decodeCount(record, 0));
+			bytes.write(record, 0, n);
+		}
+		PuzzleFile f = PuzzleFile.create(file, Sudoku.SIZE, true);
+		for(int i = 0; i < grids.size(); i++) f.append(grids.get(i), i);
+		f.close();
+		assertTrue(Arrays.equals(bytes.toByteArray(), readAll(file)));
+	}
+
+	public void testNotAPuzzleFile() throws IOException {
+		Writer out = new FileWriter(file);
+		try {
+			out.write("1...4.78..5..8.1.......93..8...9..5....8...936....7...5..2.6.......3..7..43...2..\n");
+		} finally {
+			out.close();
+		}
+		try {
+			PuzzleFile.open(file).close();
+			fail("opened a text file");
+		} catch(IOException expected) {
+			// as it should
+		}
+	}
+
+	private static byte[] readAll(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int n;
+			while((n = in.read(buffer)) >= 0) bytes.write(buffer, 0, n);
+			return bytes.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,191 @@
+import java.io.*;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*
+ * Lazily enumerates the solutions of a grid, one per next().
+ * CS108 Stanford.
+ *
+ * Runs Sudoku's iterative search, which stops on each solution and
+ * carries on from there when the next one is asked for. Only the
+ * current grid is held, never a list of solutions, so a grid with
+ * millions of them can be walked in constant memory. The search picks
+ * the blank cell with the fewest candidates at each level, as solve()
+ * does with DYNAMIC ordering, but without propagation: where solutions
+ * are dense, filling in singles costs more per solution than it saves.
+ *
+ * Enumeration ends when the solutions run out, when limit of them have
+ * been returned, or when the time budget runs out, whichever is first;
+ * the stop reason can be asked for afterwards.
+ */
+public class SolutionIterator implements Iterator<int[]> {
+
+	// Search nodes between clock reads.
+	private static final int CLOCK_STEPS = 1024;
+
+	private final Sudoku sudoku;
+	private final int[] grid;
+	private final int limit;
+	private final long deadline;
+	private int returned = 0;
+	private boolean ready = false;  // grid holds a solution not yet returned
+	private boolean exhausted = false;
+	private boolean timedOut = false;
+
+	/**
+	 * @param ints grid of side part * part, part 2..6, 0 for blank
+	 * @param limit most solutions to return
+	 * @param budgetMillis time the search may take in all, or 0 for no limit
+	 */
+	public SolutionIterator(int[][] ints, int limit, long budgetMillis) {
+		sudoku = new Sudoku(ints);
+		sudoku.setOrdering(Sudoku.Ordering.DYNAMIC);
+		sudoku.setMaxSolutions(Integer.MAX_VALUE);
+		sudoku.setPauseAtSolutions(true);
+		sudoku.setPropagation(false);
+		this.limit = limit;
+		deadline = (budgetMillis > 0) ? System.nanoTime() + budgetMillis * 1000000L : Long.MAX_VALUE;
+		grid = new int[ints.length * ints.length];
+		if(!sudoku.validate()) exhausted = true;  // no solutions
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(ready) return true;
+		if(exhausted || timedOut) return false;
+		if(returned >= limit) return false;
+		while(true) {
+			if(System.nanoTime() > deadline) {
+				timedOut = true;
+				return false;
+			}
+			boolean finished = sudoku.resume(CLOCK_STEPS);
+			if(sudoku.getCount() > returned) {
+				sudoku.copyGrid(grid);
+				ready = true;
+				return true;
+			}
+			if(finished) {
+				exhausted = true;
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Returns the next solution as size * size values, row by row, in a
+	 * new array.
+	 */
+	@Override
+	public int[] next() {
+		if(!hasNext()) throw new NoSuchElementException();
+		ready = false;
+		returned++;
+		return grid.clone();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * The remaining solutions as a sequential stream, same limits.
+	 */
+	public Stream<int[]> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+				Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Writes the remaining solutions to out, one byte per cell row by row,
+	 * size * size bytes each, without building an array or String per
+	 * solution. The stream is not flushed or closed.
+	 * @return number of solutions written
+	 */
+	public long writeTo(OutputStream out) throws IOException {
+		byte[] buffer = new byte[grid.length];
+		long written = 0;
+		while(hasNext()) {
+			for(int i = 0; i < grid.length; i++) buffer[i] = (byte) grid[i];
+			out.write(buffer);
+			ready = false;
+			returned++;
+			written++;
+		}
+		return written;
+	}
+
+	/**
+	 * Number of solutions returned so far.
+	 */
+	public int getReturned() {
+		return returned;
+	}
+
+	/**
+	 * True if every solution has been found.
+	 */
+	public boolean isExhausted() {
+		return exhausted;
+	}
+
+	/**
+	 * True if the time budget ran out before the solutions or the limit.
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	/**
+	 * Usage: SolutionIterator [puzzle [limit [budget-ms [output]]]]
+	 * Enumerates the solutions of the 9x9 puzzle in the given text file
+	 * (an empty grid if it is "empty" or missing), writing them in the
+	 * writeTo() format to output if given. Limit defaults to unlimited
+	 * and the budget to none. The count, rate and why it stopped go to
+	 * standard error.
+	 */
+	public static void main(String[] args) throws IOException {
+		int[][] grid = new int[Sudoku.SIZE][Sudoku.SIZE];
+		if(args.length > 0 && !args[0].equals("empty")) {
+			StringBuilder text = new StringBuilder();
+			BufferedReader in = new BufferedReader(new FileReader(args[0]));
+			try {
+				String line;
+				while((line = in.readLine()) != null) text.append(line).append('\n');
+			} finally {
+				in.close();
+			}
+			grid = Sudoku.textToGrid(text.toString());
+		}
+		int limit = (args.length > 1) ? Integer.parseInt(args[1]) : Integer.MAX_VALUE;
+		long budget = (args.length > 2) ? Long.parseLong(args[2]) : 0;
+		OutputStream out = (args.length > 3)
+				? new BufferedOutputStream(new FileOutputStream(args[3]), 1 << 16)
+				: new OutputStream() {
+					@Override
+					public void write(int b) {
+						// discard
+					}
+					@Override
+					public void write(byte[] b, int off, int len) {
+						// discard
+					}
+				};
+		try {
+			long start = System.nanoTime();
+			SolutionIterator it = new SolutionIterator(grid, limit, budget);
+			long count = it.writeTo(out);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			String reason = it.isExhausted() ? "all found" : it.isTimedOut() ? "out of time" : "limit";
+			System.err.printf("%d solutions in %.3fs: %.0f/s (%s)%n",
+					count, seconds, count / seconds, reason);
+		} finally {
+			out.close();
+		}
+	}
+}
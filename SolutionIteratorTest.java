@@ -0,0 +1,93 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/*
+ * Tests for SolutionIterator.
+ * CS108 Stanford.
+ */
+public class SolutionIteratorTest extends TestCase {
+
+	private static int[][] copy(int[][] grid) {
+		int[][] copy = new int[grid.length][];
+		for(int i = 0; i < grid.length; i++) copy[i] = grid[i].clone();
+		return copy;
+	}
+
+	/**
+	 * The iterator returns each solution once, every one a completion of
+	 * the grid, as many as solve() counts.
+	 */
+	public void testCounts() {
+		int[][] hardMinusOne = copy(Sudoku.hardGrid);
+		hardMinusOne[0][1] = 0;
+		assertEquals(6, countSolutions(hardMinusOne));
+		int[][] hardMinusTwoRows = copy(Sudoku.hardGrid);
+		Arrays.fill(hardMinusTwoRows[0], 0);
+		Arrays.fill(hardMinusTwoRows[1], 0);
+		assertEquals(206, countSolutions(hardMinusTwoRows));
+		assertEquals(288, countSolutions(new int[4][4]));
+		assertEquals(1, countSolutions(Sudoku.easyGrid));
+		assertEquals(0, countSolutions(Sudoku.unsolvableGrid));
+		int[][] clash = copy(Sudoku.easyGrid);
+		clash[0][2] = clash[0][0];
+		assertEquals(0, countSolutions(clash));
+	}
+
+	private static int countSolutions(int[][] grid) {
+		SolutionIterator it = new SolutionIterator(grid, Integer.MAX_VALUE, 0);
+		Set<String> seen = new HashSet<String>();
+		int size = grid.length;
+		while(it.hasNext()) {
+			int[] solution = it.next();
+			int[][] solved = new int[size][size];
+			for(int i = 0; i < size; i++) {
+				System.arraycopy(solution, i * size, solved[i], 0, size);
+				for(int j = 0; j < size; j++) {
+					assertTrue("solutions keep the clues", grid[i][j] == 0 || grid[i][j] == solved[i][j]);
+					assertTrue("solutions are complete", solved[i][j] != 0);
+				}
+			}
+			assertTrue("solutions are valid", new Sudoku(solved).validate());
+			assertTrue("solutions are not repeated", seen.add(Arrays.toString(solution)));
+		}
+		assertTrue(it.isExhausted());
+		assertFalse(it.isTimedOut());
+		assertEquals(seen.size(), it.getReturned());
+		Sudoku s = new Sudoku(grid);
+		s.setMaxSolutions(Integer.MAX_VALUE);
+		if(s.validate()) assertEquals(s.solve(), seen.size());
+		return seen.size();
+	}
+
+	/**
+	 * Enumeration stops at the limit without being exhausted.
+	 */
+	public void testLimit() {
+		SolutionIterator it = new SolutionIterator(new int[9][9], 5, 0);
+		int n = 0;
+		while(it.hasNext()) {
+			it.next();
+			n++;
+		}
+		assertEquals(5, n);
+		assertEquals(5, it.getReturned());
+		assertFalse(it.isExhausted());
+		assertFalse(it.isTimedOut());
+	}
+
+	/**
+	 * With solutions beyond counting, the budget ends the enumeration.
+	 */
+	public void testBudget() {
+		SolutionIterator it = new SolutionIterator(new int[9][9], Integer.MAX_VALUE, 100);
+		long start = System.nanoTime();
+		while(it.hasNext()) it.next();
+		assertTrue(it.isTimedOut());
+		assertFalse(it.isExhausted());
+		assertTrue(it.getReturned() > 0);
+		assertTrue((System.nanoTime() - start) / 1000000 < 2000);
+	}
+}
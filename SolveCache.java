@@ -0,0 +1,158 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Remembers recent solve results so an interactive session does not
+ * solve the same grid twice.
+ * CS108 Stanford.
+ *
+ * Grids are keyed on their cell values and the engine that solved them,
+ * so reformatting the text still hits but choosing another engine runs
+ * it. Besides exact hits, the cache offers the most recent solution from
+ * the same engine: if a new grid's clues all agree with it, that
+ * solution is still valid, and if the new grid only adds clues to a
+ * grid with one solution it is still the only one. Methods are
+ * synchronized because solves run on background threads.
+ */
+public class SolveCache {
+
+	/**
+	 * A solved grid.
+	 */
+	public static class Entry {
+		private final int[][] grid;
+		private final Sudoku.Engine engine;
+		private final int solutions;
+		private final int[][] solution;
+
+		private Entry(int[][] grid, Sudoku.Engine engine, int solutions, int[][] solution) {
+			this.grid = grid;
+			this.engine = engine;
+			this.solutions = solutions;
+			this.solution = solution;
+		}
+
+		public int getSolutions() {
+			return solutions;
+		}
+
+		/**
+		 * First solution found, or null if there is none.
+		 */
+		public int[][] getSolution() {
+			return solution;
+		}
+
+		/**
+		 * True if every clue of this entry's grid is also a clue of grid.
+		 */
+		public boolean cluesWithin(int[][] other) {
+			for(int i = 0; i < grid.length; i++) {
+				for(int j = 0; j < grid[i].length; j++) {
+					if(grid[i][j] != 0 && grid[i][j] != other[i][j]) return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * True if this entry has a solution and every clue of grid
+		 * matches it, so it is a solution of grid too.
+		 */
+		private boolean solves(int[][] other) {
+			if(solution == null) return false;
+			for(int i = 0; i < other.length; i++) {
+				for(int j = 0; j < other[i].length; j++) {
+					if(other[i][j] != 0 && other[i][j] != solution[i][j]) return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private final Map<String, Entry> entries;
+	private Entry last;
+	private long checks = 0;
+	private long hits = 0;
+	private long reuses = 0;
+
+	/**
+	 * @param capacity number of grids kept; the least recently used
+	 * is dropped beyond that
+	 */
+	public SolveCache(final int capacity) {
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the stored result for exactly this grid from engine, or
+	 * null. Every call counts as one check towards the hit rate.
+	 */
+	public synchronized Entry lookup(int[][] grid, Sudoku.Engine engine) {
+		checks++;
+		Entry e = entries.get(key(grid, engine));
+		if(e != null) {
+			hits++;
+			last = e;
+		}
+		return e;
+	}
+
+	/**
+	 * Returns the most recently stored or looked up entry if engine
+	 * produced it and its solution also solves grid, or null.
+	 */
+	public synchronized Entry lastSolving(int[][] grid, Sudoku.Engine engine) {
+		return (last != null && last.engine == engine && last.solves(grid)) ? last : null;
+	}
+
+	/**
+	 * Records that grid was answered from an earlier solution without
+	 * a search, for the hit rate, and stores the result.
+	 */
+	public synchronized Entry storeReused(int[][] grid, Sudoku.Engine engine, int solutions,
+			int[][] solution) {
+		reuses++;
+		return store(grid, engine, solutions, solution);
+	}
+
+	/**
+	 * Stores the result of solving grid with engine. The arrays are kept,
+	 * not copied.
+	 */
+	public synchronized Entry store(int[][] grid, Sudoku.Engine engine, int solutions,
+			int[][] solution) {
+		Entry e = new Entry(grid, engine, solutions, solution);
+		entries.put(key(grid, engine), e);
+		last = e;
+		return e;
+	}
+
+	/**
+	 * Returns a one-line summary, e.g. "cache: 6 hits, 2 reused / 10 checks (80%)".
+	 */
+	public synchronized String getSummary() {
+		long answered = hits + reuses;
+		return "cache: " + hits + " hits, " + reuses + " reused / " + checks + " checks ("
+				+ ((checks == 0) ? 0 : 100 * answered / checks) + "%)";
+	}
+
+	/**
+	 * The engine's number, then the grid's values row by row, one char
+	 * each.
+	 */
+	private static String key(int[][] grid, Sudoku.Engine engine) {
+		StringBuilder sb = new StringBuilder(1 + grid.length * grid.length);
+		sb.append((char) ('0' + engine.ordinal()));
+		for(int[] row : grid) {
+			for(int value : row) sb.append((char) ('0' + value));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Figures recorded by one Sudoku.solve() call.
+ * CS108 Stanford.
+ */
+public class SolveStats {
+
+	private final int solutions;
+	private final long nodes;
+	private final long backtracks;
+	private final int maxDepth;
+	private final long candidateEvaluations;
+	private final long guesses;
+	private final long propagated;
+	private final long firstSolutionNanos;
+	private final long totalNanos;
+
+	SolveStats(int solutions, long nodes, long backtracks, int maxDepth,
+			long candidateEvaluations, long guesses, long propagated,
+			long firstSolutionNanos, long totalNanos) {
+		this.solutions = solutions;
+		this.nodes = nodes;
+		this.backtracks = backtracks;
+		this.maxDepth = maxDepth;
+		this.candidateEvaluations = candidateEvaluations;
+		this.guesses = guesses;
+		this.propagated = propagated;
+		this.firstSolutionNanos = firstSolutionNanos;
+		this.totalNanos = totalNanos;
+	}
+
+	/**
+	 * Number of solutions counted, at most the solution limit.
+	 */
+	public int getSolutions() {
+		return solutions;
+	}
+
+	/**
+	 * Number of search nodes visited.
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Number of dead ends: branches abandoned because some cell or unit
+	 * had no way left to be completed.
+	 */
+	public long getBacktracks() {
+		return backtracks;
+	}
+
+	/**
+	 * Deepest nesting of guesses reached, or 0 if not collected.
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Number of times a cell's candidates were computed, or 0 if not
+	 * collected.
+	 */
+	public long getCandidateEvaluations() {
+		return candidateEvaluations;
+	}
+
+	/**
+	 * Number of values tried in cells that had more than one candidate.
+	 */
+	public long getGuesses() {
+		return guesses;
+	}
+
+	/**
+	 * Number of cells filled in by propagation.
+	 */
+	public long getPropagated() {
+		return propagated;
+	}
+
+	/**
+	 * Nanoseconds from the start of solve() to the first solution,
+	 * or -1 if there was none or the engine does not report it.
+	 */
+	public long getFirstSolutionNanos() {
+		return firstSolutionNanos;
+	}
+
+	/**
+	 * Nanoseconds spent in solve().
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("solutions: " + solutions + "\n");
+		sb.append("nodes: " + nodes + "\n");
+		sb.append("backtracks: " + backtracks + "\n");
+		sb.append("max depth: " + maxDepth + "\n");
+		sb.append("candidate evaluations: " + candidateEvaluations + "\n");
+		sb.append("guesses: " + guesses + "\n");
+		sb.append("propagated: " + propagated + "\n");
+		sb.append("first solution: " + ((firstSolutionNanos < 0) ? "-"
+				: String.format("%.3fms", firstSolutionNanos / 1e6)) + "\n");
+		sb.append("total: " + String.format("%.3fms", totalNanos / 1e6));
+		return sb.toString();
+	}
+}
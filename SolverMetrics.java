@@ -0,0 +1,142 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Latency histograms for the phases of solving, across many solves.
+ * CS108 Stanford.
+ *
+ * Attach one to a Sudoku (or a SudokuBatch, which also times parsing
+ * and formatting) and every phase it runs is timed with System.nanoTime
+ * and recorded. The figures can be read back as percentiles or written
+ * in the Prometheus text format, e.g. for node_exporter's textfile
+ * collector to pick up after each batch job. Safe to share between
+ * threads.
+ */
+public class SolverMetrics {
+
+	/**
+	 * The phases timed. ORDER is the setup before the search proper:
+	 * initial propagation and ordering of the blank cells.
+	 */
+	public enum Phase {
+		PARSE, VALIDATE, ORDER, SEARCH, FORMAT;
+	}
+
+	// Quantiles written out, as fractions.
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private final Map<Phase, LatencyHistogram> histograms =
+			new EnumMap<Phase, LatencyHistogram>(Phase.class);
+	private final AtomicLong solves = new AtomicLong();
+	private final AtomicLong solutions = new AtomicLong();
+	private final AtomicLong nodes = new AtomicLong();
+
+	public SolverMetrics() {
+		for(Phase phase : Phase.values()) histograms.put(phase, new LatencyHistogram());
+	}
+
+	/**
+	 * Records one run of a phase that took the given nanoseconds.
+	 */
+	public void record(Phase phase, long nanos) {
+		histograms.get(phase).record(nanos);
+	}
+
+	/**
+	 * Counts one finished solve.
+	 * @param solutions solutions it counted
+	 * @param nodes search nodes it visited, 0 if not known
+	 */
+	public void recordSolve(int solutions, long nodes) {
+		solves.incrementAndGet();
+		this.solutions.addAndGet(solutions);
+		this.nodes.addAndGet(nodes);
+	}
+
+	public LatencyHistogram getHistogram(Phase phase) {
+		return histograms.get(phase);
+	}
+
+	public long getSolves() {
+		return solves.get();
+	}
+
+	/**
+	 * Returns one line per phase that has been recorded, e.g.
+	 * "search: 20000 runs, p50 41.2us, p99 310.3us, max 2104.0us, total 1030512.7us".
+	 */
+	public String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		for(Phase phase : Phase.values()) {
+			LatencyHistogram h = histograms.get(phase);
+			if(h.getCount() == 0) continue;
+			sb.append(phase.name().toLowerCase()).append(": ").append(h.getCount())
+					.append(" runs, p50 ").append(micros(h.getValueAtPercentile(50)))
+					.append(", p99 ").append(micros(h.getValueAtPercentile(99)))
+					.append(", max ").append(micros(h.getMax()))
+					.append(", total ").append(micros(h.getSum())).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the metrics in the Prometheus text exposition format:
+	 * a summary of seconds per phase with p50, p90, p99 and p99.9, and
+	 * counters of solves, solutions and nodes.
+	 */
+	public void writePrometheus(Writer out) throws IOException {
+		out.write("# HELP sudoku_phase_seconds Time spent in each phase of solving a puzzle.\n");
+		out.write("# TYPE sudoku_phase_seconds summary\n");
+		for(Phase phase : Phase.values()) {
+			LatencyHistogram h = histograms.get(phase);
+			String label = "phase=\"" + phase.name().toLowerCase() + "\"";
+			for(double q : QUANTILES) {
+				out.write("sudoku_phase_seconds{" + label + ",quantile=\"" + q + "\"} "
+						+ seconds(h.getValueAtPercentile(100 * q)) + "\n");
+			}
+			out.write("sudoku_phase_seconds_sum{" + label + "} " + seconds(h.getSum()) + "\n");
+			out.write("sudoku_phase_seconds_count{" + label + "} " + h.getCount() + "\n");
+		}
+		writeCounter(out, "sudoku_solves_total", "Puzzles solved.", solves.get());
+		writeCounter(out, "sudoku_solutions_total", "Solutions counted, up to each solve's limit.",
+				solutions.get());
+		writeCounter(out, "sudoku_nodes_total", "Search nodes visited by the backtracking engine.",
+				nodes.get());
+	}
+
+	/**
+	 * Writes the Prometheus text to file by way of a temporary file
+	 * renamed over it, so a collector never reads half a file.
+	 */
+	public void writePrometheus(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+		try {
+			writePrometheus(out);
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeCounter(Writer out, String name, String help, long value)
+			throws IOException {
+		out.write("# HELP " + name + " " + help + "\n");
+		out.write("# TYPE " + name + " counter\n");
+		out.write(name + " " + value + "\n");
+	}
+
+	private static String micros(long nanos) {
+		return String.format("%.1fus", nanos / 1e3);
+	}
+
+	private static String seconds(long nanos) {
+		return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+	}
+}
@@ -1,4 +1,6 @@
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /*
  * Encapsulates a Sudoku grid to be solved.
@@ -8,67 +10,248 @@ public class Sudoku {
 	// Provided grid data for main/testing
 	// The instance variable strategy is up to you.
 	
-	private final int[][] grid;
+	private final Layout layout;
+	private final int size;  // values run 1..size
+	private final long allValues;  // bits for 1..size
+	private final int[] grid;  // flat, cell index row * size + col
 	private int count = 0;
 	private boolean solved = false;
-	private long startTime;
+	private long nodes = 0;
+	private Ordering ordering = Ordering.STATIC;
+	private boolean propagation = true;
+	private long guesses = 0;
+	private long propagated = 0;
+	private int maxSolutions = MAX_SOLUTIONS;
+	private Engine engine = Engine.BACKTRACKING;
+	private AtomicInteger sharedCount;
+	private volatile boolean cancelled = false;
 	
-	private String solution = "";
+	// Extra search statistics, only gathered when collectStats is set.
+	private boolean collectStats = false;
+	private long backtracks = 0;
+	private long candidateEvaluations = 0;
+	private int depth = 0;
+	private int maxDepth = 0;
+	private long solveStart = 0;
+	private long firstSolutionNanos = -1;
+	private long totalNanos = 0;
+	private long orderNanos = 0;
+	private SolverMetrics metrics;
+	
+	private String solution;
+	private final int[] solutionGrid;
+	private final int[] start;
 	private String original;
 	
+	// Bit (v - 1) is set when value v is already used in that row/column/box.
+	private final long[] rowMask;
+	private final long[] colMask;
+	private final long[] boxMask;
+	
+	// Scratch for validate(): the row masks, then column, then box.
+	private final long[] seen;
+	
+	// One Spot per cell, indexed like grid.
+	private final Spot[] cells;
+	
+	// Cells filled by propagate(), most recent last, so a branch
+	// can be undone back to a mark on backtrack.
+	private final int[] trail;
+	private int trailSize = 0;
+	
+	// The iterative search's stack. order holds the blank cells in
+	// search order; frame d is the cell tried at depth d: its index in
+	// order, the candidates not yet tried, the trail size before the
+	// value it holds, and whether it had more than one candidate.
+	private boolean recursive = false;
+	private boolean started = false;
+	private final Spot[] order;
+	private int orderLength;
+	private final int[] framePos;
+	private final long[] frameBits;
+	private final int[] frameMark;
+	private final boolean[] frameGuess;
+	private int frames = 0;
+	private int enterAt = -1;  // index in order of the node to visit next, or -1
+	private boolean afterChild = false;  // top frame's current value has been explored
+	private boolean pauseAtSolutions = false;
+	private boolean paused = false;  // stopped on a solution, still in grid
+	
 	private class Spot {
-		private int x, y;
+		private int row, col, box, cell;
 		
-		private Spot(int x, int y) {
-			this.x = x;
-			this.y = y;
+		private Spot(int cell) {
+			this.cell = cell;
+			this.row = layout.rowOf[cell];
+			this.col = layout.colOf[cell];
+			this.box = layout.boxOf[cell];
 		}
 		
-		private void set(int newValue) {
-			grid[x][y] = newValue;
+		private boolean isBlank() {
+			return grid[cell] == 0;
 		}
 		
-		private Set<Integer> getValidNumbers() {
-			HashSet<Integer> s = new HashSet<Integer>(
-					Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9));
-			for(int i = 0; i < SIZE; i++) {
-				if(i != x) s.remove(get(i, y));
-			}
-			for(int j = 0; j < SIZE; j++) {
-				if(j != y) s.remove(get(x, j));
+		/**
+		 * Sets the value of this spot, keeping the row, column and box
+		 * masks in step with the grid.
+		 */
+		private void set(int newValue) {
+			int old = grid[cell];
+			if(old != 0) {
+				long clear = ~bit(old);
+				rowMask[row] &= clear;
+				colMask[col] &= clear;
+				boxMask[box] &= clear;
 			}
-			for(int i = 0; i < PART; i++) {
-				for(int j = 0; j < PART; j++) {
-					int newX = PART * (x / PART) + i;
-					int newY = PART * (y / PART) + j;
-					if(newX != x || newY != y)
-						s.remove(get(newX, newY));
-				}
+			grid[cell] = newValue;
+			if(newValue != 0) {
+				long b = bit(newValue);
+				rowMask[row] |= b;
+				colMask[col] |= b;
+				boxMask[box] |= b;
 			}
-			return s;
 		}
+		
+		/**
+		 * Returns the values this spot may take as a bitmask,
+		 * bit (v - 1) set meaning v is allowed.
+		 */
+		private long candidates() {
+			if(collectStats) candidateEvaluations++;
+			return allValues & ~(rowMask[row] | colMask[col] | boxMask[box]);
+		}
+	}
+	
+	private static long bit(int value) {
+		return 1L << (value - 1);
 	}
 	
-	private int get(int x, int y) {
-		return grid[x][y];
+	private static int lowestValue(long bits) {
+		return Long.numberOfTrailingZeros(bits) + 1;
 	}
 	
-	// Provided -- the deliverable main().
-	// You can edit to do easier cases, but turn in
-	// solving hardGrid.
-	public static void main(String[] args) {
+	/**
+	 * Usage: Sudoku [options] [file ...]
+	 *   -t, --threads n     worker threads (default one per core)
+	 *   -e, --engine name   backtracking, dancing_links or parallel
+	 *   -l, --limit n       solutions counted per puzzle (default MAX_SOLUTIONS)
+	 *   -f, --format name   text, binary or csv (default text)
+	 *   -o, --output file   results go there instead of standard out
+	 *   -c, --cache n       canonical puzzles remembered (default 0, none)
+	 *   -m, --metrics file  phase latencies written there for Prometheus
+	 * Reads puzzles one per line (see lineToGrid) from each file in turn,
+	 * "-" meaning standard input, and writes one result per puzzle as
+	 * SudokuBatch.run describes, all through one buffer. Throughput goes
+	 * to standard error. With no file named, solves hardGrid and prints
+	 * it the way the provided main() did; standard input is only read
+	 * when asked for with "-", so a redirected run never sits waiting on it.
+	 */
+	public static void main(String[] args) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		Engine engine = Engine.BACKTRACKING;
+		int limit = MAX_SOLUTIONS;
+		SudokuBatch.Format format = SudokuBatch.Format.TEXT;
+		String output = null;
+		int cacheSize = 0;
+		File metricsFile = null;
+		List<String> files = new ArrayList<String>();
+		try {
+			for(int a = 0; a < args.length; a++) {
+				String arg = args[a];
+				if(!arg.startsWith("-") || arg.equals("-")) {
+					files.add(arg);
+					continue;
+				}
+				if(a + 1 == args.length) throw new IllegalArgumentException(arg + " needs a value");
+				String value = args[++a];
+				if(arg.equals("-t") || arg.equals("--threads")) {
+					threads = Integer.parseInt(value);
+				} else if(arg.equals("-e") || arg.equals("--engine")) {
+					engine = Engine.valueOf(value.toUpperCase());
+				} else if(arg.equals("-l") || arg.equals("--limit")) {
+					limit = Integer.parseInt(value);
+				} else if(arg.equals("-f") || arg.equals("--format")) {
+					format = SudokuBatch.Format.valueOf(value.toUpperCase());
+				} else if(arg.equals("-o") || arg.equals("--output")) {
+					output = value;
+				} else if(arg.equals("-c") || arg.equals("--cache")) {
+					cacheSize = Integer.parseInt(value);
+				} else if(arg.equals("-m") || arg.equals("--metrics")) {
+					metricsFile = new File(value);
+				} else {
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+			if(threads < 1 || limit < 1) throw new IllegalArgumentException("threads and limit must be positive");
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: Sudoku [-t threads] [-e engine] [-l limit] [-f text|binary|csv]"
+					+ " [-o output] [-c cache] [-m metrics] [file|- ...]");
+			System.exit(2);
+		}
+		
+		if(files.isEmpty()) {
+			solveHardGrid(engine, limit);
+			return;
+		}
+		
+		CanonicalCache cache = (cacheSize > 0) ? new CanonicalCache(cacheSize) : null;
+		SolverMetrics metrics = (metricsFile != null) ? new SolverMetrics() : null;
+		SudokuBatch batch = new SudokuBatch(threads, engine, limit, cache);
+		batch.setFormat(format);
+		batch.setMetrics(metrics);
+		OutputStream out = new BufferedOutputStream((output != null)
+				? new FileOutputStream(output) : System.out, 1 << 16);
+		long puzzles = 0;
+		long start = System.nanoTime();
+		try {
+			batch.writeHeader(out);
+			for(String file : files) {
+				if(file.equals("-")) {
+					BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "US-ASCII"), 1 << 16);
+					puzzles += batch.run(in, out);
+				} else {
+					MappedPuzzleReader in = new MappedPuzzleReader(new File(file));
+					try {
+						puzzles += batch.run(in, out);
+					} finally {
+						in.close();
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.printf("%d puzzles in %.3fs: %.0f puzzles/s (%d threads, %s)%n",
+				puzzles, seconds, puzzles / seconds, threads, engine);
+		if(cache != null) System.err.println(cache.getSummary());
+		if(metrics != null) {
+			System.err.print(metrics.getSummary());
+			metrics.writePrometheus(metricsFile);
+		}
+	}
+	
+	/**
+	 * The provided main(): solves hardGrid and prints the problem, the
+	 * count, the time and the solution.
+	 */
+	private static void solveHardGrid(Engine engine, int limit) {
 		Sudoku sudoku;
-		sudoku = new Sudoku(hardGrid);	
+		sudoku = new Sudoku(hardGrid);
+		sudoku.setEngine(engine);
+		sudoku.setMaxSolutions(limit);
 		System.out.println(sudoku); // print the raw problem
 		
 		int count = sudoku.solve();
 		System.out.println("solutions:" + count);
-		System.out.println("elapsed:" + sudoku.getElapsed() + "ms");
+		System.out.printf("elapsed:%.3fms%n", sudoku.getElapsedNanos() / 1e6);
 		System.out.println(sudoku.getSolutionText());
 	}
 	
 	@Override
 	public String toString() {
+		if(original == null) original = gridToText(toGrid(start));
 		return original;
 	}
 	
@@ -78,7 +261,7 @@ public class Sudoku {
 			for(int j = 0; j < g[0].length; j++) {
 				sb.append(g[i][j] + " ");
 			}
-			if(i < SIZE - 1) sb.append("\n");
+			if(i < g.length - 1) sb.append("\n");
 		}
 		return sb.toString();
 	}
@@ -88,47 +271,550 @@ public class Sudoku {
 
 	/**
 	 * Sets up based on the given ints.
+	 * The grid may be any square of side part * part for part 2..6,
+	 * i.e. 4x4 up to 36x36; blanks are 0 and values run 1..side.
 	 */
 	public Sudoku(int[][] ints) {
-		grid = deepCopy(ints);
-		startTime = System.currentTimeMillis();
-		original = gridToText(grid);
+		layout = Layout.forSize(ints.length);
+		size = layout.size;
+		allValues = (1L << size) - 1;
+		int n = layout.cells;
+		grid = new int[n];
+		start = new int[n];
+		solutionGrid = new int[n];
+		trail = new int[n];
+		rowMask = new long[size];
+		colMask = new long[size];
+		boxMask = new long[size];
+		seen = new long[3 * size];
+		order = new Spot[n];
+		framePos = new int[n];
+		frameBits = new long[n];
+		frameMark = new int[n];
+		frameGuess = new boolean[n];
+		cells = new Spot[n];
+		for(int i = 0; i < n; i++) {
+			cells[i] = new Spot(i);
+		}
+		load(ints);
+	}
+	
+	/**
+	 * Replaces the puzzle with the given ints and clears the results of
+	 * the previous solve(), keeping the engine and search settings.
+	 * Lets one Sudoku be reused for many grids without reallocating.
+	 * The new grid must be the same size as the old one.
+	 */
+	public void load(int[][] ints) {
+		if(ints.length != size) {
+			throw new IllegalArgumentException("Expected a " + size + "x" + size
+					+ " grid, but got " + ints.length + " rows");
+		}
+		Arrays.fill(rowMask, 0);
+		Arrays.fill(colMask, 0);
+		Arrays.fill(boxMask, 0);
+		for(int i = 0; i < size; i++) {
+			for(int j = 0; j < size; j++) {
+				int cell = i * size + j;
+				int value = ints[i][j];
+				grid[cell] = value;
+				start[cell] = value;
+				if(value != 0) {
+					long b = bit(value);
+					rowMask[i] |= b;
+					colMask[j] |= b;
+					boxMask[layout.boxOf[cell]] |= b;
+				}
+			}
+		}
+		count = 0;
+		solved = false;
+		nodes = 0;
+		guesses = 0;
+		propagated = 0;
+		backtracks = 0;
+		candidateEvaluations = 0;
+		depth = 0;
+		maxDepth = 0;
+		firstSolutionNanos = -1;
+		totalNanos = 0;
+		orderNanos = 0;
+		trailSize = 0;
+		started = false;
+		frames = 0;
+		enterAt = -1;
+		afterChild = false;
+		paused = false;
+		solution = null;
+		original = null;
+		cancelled = false;
+	}
+	
+	/**
+	 * Returns the side length of the grid (9 for a standard Sudoku).
+	 */
+	public int getSize() {
+		return size;
 	}
 	
 	
 	
 	/**
-	 * Solves the puzzle, invoking the underlying recursive search.
+	 * Solves the puzzle, running the search to the end.
+	 * With propagation on, singles are filled in before the search
+	 * starts and again after every guess.
+	 * Engines other than BACKTRACKING are handed a copy of the grid.
 	 */
 	public int solve() {
 		if(solved) return count;
+		if(engine != Engine.BACKTRACKING) {
+			solved = true;
+			solveStart = System.nanoTime();
+			SudokuSolver solver = engine.newSolver();
+			count = solver.solve(toGrid(grid), maxSolutions);
+			if(count > 0) copyInto(solver.getSolution(), solutionGrid);
+			totalNanos = System.nanoTime() - solveStart;
+			finished();
+		} else {
+			resume(Long.MAX_VALUE);
+		}
+		return count;
+	}
+	
+	/**
+	 * Runs the search for up to maxNodes more search nodes, then stops
+	 * where it is; the next resume() or solve() carries on from there.
+	 * The count and first solution so far can be read in between.
+	 * The recursive search and other engines cannot stop part way and
+	 * always run to the end.
+	 * @return true once the search has finished
+	 */
+	public boolean resume(long maxNodes) {
+		if(solved) return true;
+		if(engine != Engine.BACKTRACKING || recursive) {
+			if(recursive) {
+				solveStart = System.nanoTime();
+				search();
+				totalNanos = System.nanoTime() - solveStart;
+				solved = true;
+				finished();
+			} else {
+				solve();
+			}
+			return true;
+		}
+		long began = System.nanoTime();
+		if(!started) {
+			started = true;
+			solveStart = began;
+			if(propagation && !propagate()) {
+				backtracks++;
+			} else {
+				orderBlankCells();
+				enterAt = 0;
+			}
+			orderNanos = System.nanoTime() - began;
+		}
+		solved = (enterAt < 0 && frames == 0) || iterate(maxNodes);
+		totalNanos += System.nanoTime() - began;
+		if(solved) finished();
+		return solved;
+	}
+	
+	/**
+	 * Records a finished solve in the metrics, if any. The recursive
+	 * search and other engines do their setup inside the search, so all
+	 * their time counts as SEARCH.
+	 */
+	private void finished() {
+		if(metrics == null) return;
+		if(orderNanos > 0) metrics.record(SolverMetrics.Phase.ORDER, orderNanos);
+		metrics.record(SolverMetrics.Phase.SEARCH, totalNanos - orderNanos);
+		metrics.recordSolve(count, nodes);
+	}
+	
+	/**
+	 * Times validate(), the setup and search of solve(), and the first
+	 * getSolutionText() into metrics from now on; null to stop.
+	 */
+	public void setMetrics(SolverMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Selects the original recursive search instead of the iterative
+	 * one. Both visit the same nodes and find the same solutions; the
+	 * recursive one is kept for comparison. Must be called before solve().
+	 */
+	public void setRecursive(boolean recursive) {
+		this.recursive = recursive;
+	}
+	
+	/**
+	 * The search, one step per pass of the loop instead of one call per
+	 * node: either visit the node at enterAt, or give the top frame's
+	 * cell its next candidate, popping the frame once it has none left.
+	 * Visits the same nodes in the same order as trySpot() and
+	 * tryMostConstrained() with tryCandidates().
+	 * @return true once the search has finished, false if it stopped
+	 * after maxNodes nodes
+	 */
+	private boolean iterate(long maxNodes) {
+		long stopAt = (maxNodes > Long.MAX_VALUE - nodes) ? Long.MAX_VALUE : nodes + maxNodes;
+		while(true) {
+			if(enterAt >= 0) {
+				if(nodes >= stopAt) return false;
+				int index = enterAt;
+				enterAt = -1;
+				if(enter(index)) continue;
+				if(frames == 0) return true;
+				afterChild = true;
+				if(paused) {
+					paused = false;
+					return false;
+				}
+			}
+			int f = frames - 1;
+			Spot s = order[framePos[f]];
+			if(afterChild) {
+				afterChild = false;
+				undo(frameMark[f]);
+				if(limitReached()) frameBits[f] = 0;
+			}
+			long bits = frameBits[f];
+			if(bits == 0) {
+				s.set(0);
+				if(collectStats) depth--;
+				if(--frames == 0) return true;
+				afterChild = true;
+				continue;
+			}
+			if(frameGuess[f]) guesses++;
+			frameMark[f] = trailSize;
+			s.set(lowestValue(bits));
+			frameBits[f] = bits & (bits - 1);
+			if(!propagation || propagate()) {
+				enterAt = framePos[f] + 1;
+			} else {
+				backtracks++;
+				afterChild = true;
+			}
+		}
+	}
+	
+	/**
+	 * Visits the node at index in order: picks its cell the way the
+	 * ordering says and pushes a frame for it. Returns false, pushing
+	 * nothing, if the node is a solution or a dead end or the limit has
+	 * been reached.
+	 */
+	private boolean enter(int index) {
+		if(limitReached()) return false;
+		nodes++;
+		if(ordering == Ordering.DYNAMIC) {
+			int best = -1;
+			int bestCount = size + 1;
+			for(int k = index; k < orderLength; k++) {
+				if(!order[k].isBlank()) continue;
+				int c = Long.bitCount(order[k].candidates());
+				if(c < bestCount) {
+					best = k;
+					bestCount = c;
+					if(c == 0) {
+						backtracks++;
+						return false;
+					}
+				}
+			}
+			if(best < 0) {
+				foundSolution();
+				return false;
+			}
+			Spot t = order[best];
+			order[best] = order[index];
+			order[index] = t;
+		} else {
+			while(index < orderLength && !order[index].isBlank()) index++;
+			if(index == orderLength) {
+				foundSolution();
+				return false;
+			}
+		}
+		long bits = order[index].candidates();
+		if(bits == 0) {
+			backtracks++;
+			return false;
+		}
+		if(collectStats && ++depth > maxDepth) maxDepth = depth;
+		framePos[frames] = index;
+		frameBits[frames] = bits;
+		frameGuess[frames] = (bits & (bits - 1)) != 0;
+		frames++;
+		return true;
+	}
+	
+	/**
+	 * Fills order with the blank cells, fewest candidates first, in the
+	 * same order as sortedBlankCells().
+	 */
+	private void orderBlankCells() {
+		orderLength = 0;
+		for(Spot s : cells) {
+			if(s.isBlank()) order[orderLength++] = s;
+		}
+		Arrays.sort(order, 0, orderLength, byCandidates);
+	}
+	
+	private void search() {
+		if(propagation && !propagate()) {
+			backtracks++;
+			return;
+		}
 		List<Spot> spots = sortedBlankCells();
 		int maxSpots = spots.size();
-		trySpot(spots, 0, maxSpots);		
-		return count; // YOUR CODE HERE
+		if(ordering == Ordering.DYNAMIC) {
+			tryMostConstrained(spots.toArray(new Spot[maxSpots]), 0);
+		} else {
+			trySpot(spots, 0, maxSpots);
+		}
 	}
 	
 	/**
 	 * Recursive helper function for solve.
-	 * Assumes that every spot in spots before index is non-zero, 
-	 * everything after is 0.
-	 * Iterates over options in getValidNumbers() and follows recursively.
+	 * Assumes that every spot in spots before index is non-zero.
+	 * Spots after it are 0 unless propagation has filled them, in
+	 * which case they are skipped.
+	 * Iterates over the set bits of the spot's candidate mask, lowest
+	 * value first, and follows recursively.
 	 */
 	private void trySpot(List<Spot> spots, int index, int length) {
-		if(count >= MAX_SOLUTIONS) return;
+		if(limitReached()) return;
+		nodes++;
+		while(index < length && !spots.get(index).isBlank()) index++;
 		if(index == length) {
-			if(count == 0) solution = gridToText(grid);
-			count++;
+			foundSolution();
 			return;
 		}
 		Spot s = spots.get(index);
-		for(Integer i : s.getValidNumbers()) {
-			s.set(i);
-			trySpot(spots, index + 1, length);
+		tryCandidates(s, s.candidates(), spots, null, index + 1, length);
+	}
+	
+	/**
+	 * Recursive helper function for solve in DYNAMIC ordering.
+	 * Spots before index are filled, the rest are blank unless
+	 * propagation has filled them. At each level the blank spot with
+	 * the fewest candidates is swapped into index and tried; a spot
+	 * with no candidates ends the branch immediately.
+	 */
+	private void tryMostConstrained(Spot[] spots, int index) {
+		if(limitReached()) return;
+		nodes++;
+		int best = -1;
+		int bestCount = size + 1;
+		for(int k = index; k < spots.length; k++) {
+			if(!spots[k].isBlank()) continue;
+			int c = Long.bitCount(spots[k].candidates());
+			if(c < bestCount) {
+				best = k;
+				bestCount = c;
+				if(c == 0) { // dead end, no need to look further
+					backtracks++;
+					return;
+				}
+			}
+		}
+		if(best < 0) {
+			foundSolution();
+			return;
+		}
+		Spot s = spots[best];
+		spots[best] = spots[index];
+		spots[index] = s;
+		tryCandidates(s, s.candidates(), null, spots, index + 1, spots.length);
+	}
+	
+	/**
+	 * Places each value of bits in s in turn and recurses into whichever
+	 * of the two searches is in use (list for STATIC, array for DYNAMIC).
+	 * Anything propagate() fills in is undone before the next value.
+	 */
+	private void tryCandidates(Spot s, long bits, List<Spot> list, Spot[] array,
+			int next, int length) {
+		if(bits == 0) {
+			backtracks++;
+			return;
+		}
+		if(collectStats && ++depth > maxDepth) maxDepth = depth;
+		boolean guess = (bits & (bits - 1)) != 0;
+		for(; bits != 0; bits &= bits - 1) {
+			if(guess) guesses++;
+			int mark = trailSize;
+			s.set(lowestValue(bits));
+			if(!propagation || propagate()) {
+				if(array != null) tryMostConstrained(array, next);
+				else trySpot(list, next, length);
+			} else {
+				backtracks++;
+			}
+			undo(mark);
+			if(limitReached()) break;
 		}
 		s.set(0);
+		if(collectStats) depth--;
+	}
+	
+	private void foundSolution() {
+		if(pauseAtSolutions) paused = true;
+		if(sharedCount != null) sharedCount.incrementAndGet();
+		if(count == 0) {
+			System.arraycopy(grid, 0, solutionGrid, 0, grid.length);
+			firstSolutionNanos = System.nanoTime() - solveStart;
+		}
+		count++;
+	}
+	
+	/**
+	 * True once this search, or all the searches sharing its counter,
+	 * have found maxSolutions solutions, or the search was cancelled.
+	 */
+	private boolean limitReached() {
+		return count >= maxSolutions || cancelled
+				|| (sharedCount != null && sharedCount.get() >= maxSolutions);
+	}
+	
+	/**
+	 * Splits the search one level, for ParallelSolver. Propagates, then
+	 * returns a copy of the grid for each candidate of the most
+	 * constrained blank cell. Returns an empty list if the grid has no
+	 * solution, and null if no blank cells are left.
+	 */
+	List<int[][]> branches() {
+		List<int[][]> result = new ArrayList<int[][]>();
+		if(propagation && !propagate()) return result;
+		Spot best = null;
+		int bestCount = size + 1;
+		for(Spot s : cells) {
+			if(!s.isBlank()) continue;
+			int c = Long.bitCount(s.candidates());
+			if(c == 0) return result;
+			if(c < bestCount) {
+				best = s;
+				bestCount = c;
+			}
+		}
+		if(best == null) return null;
+		for(long bits = best.candidates(); bits != 0; bits &= bits - 1) {
+			best.set(lowestValue(bits));
+			result.add(toGrid(grid));
+		}
+		best.set(0);
+		return result;
+	}
+	
+	/**
+	 * Makes resume() also stop straight after each solution it finds,
+	 * with the solution still in the grid for copyGrid(), for
+	 * SolutionIterator. Must be called before solve().
+	 */
+	void setPauseAtSolutions(boolean pause) {
+		this.pauseAtSolutions = pause;
+	}
+	
+	/**
+	 * Solutions found so far, as resume() goes.
+	 */
+	int getCount() {
+		return count;
+	}
+	
+	/**
+	 * Copies the grid as the search has it now into to, row by row.
+	 */
+	void copyGrid(int[] to) {
+		System.arraycopy(grid, 0, to, 0, grid.length);
 	}
 	
+	/**
+	 * Makes solve() count every solution it finds into shared as well,
+	 * and stop as soon as shared reaches the solution limit, so that
+	 * several searches over parts of one grid can stop together.
+	 */
+	void setSharedCount(AtomicInteger shared) {
+		this.sharedCount = shared;
+	}
+	
+	/**
+	 * Fills in naked singles (a blank cell with one candidate) and hidden
+	 * singles (a value with one possible cell in a row, column or box)
+	 * until neither rule applies. Every cell filled is pushed on the trail.
+	 * Returns false if some cell or unit is left with no way to be
+	 * completed, in which case the caller undoes the trail.
+	 */
+	private boolean propagate() {
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int k = 0; k < cells.length; k++) {
+				Spot s = cells[k];
+				if(!s.isBlank()) continue;
+				long c = s.candidates();
+				if(c == 0) return false;
+				if((c & (c - 1)) == 0) {
+					place(s, lowestValue(c));
+					changed = true;
+				}
+			}
+			for(int[] unit : layout.units) {
+				long once = 0, twice = 0, filled = 0;
+				for(int k : unit) {
+					if(grid[k] != 0) {
+						filled |= bit(grid[k]);
+						continue;
+					}
+					long c = cells[k].candidates();
+					twice |= once & c;
+					once |= c;
+				}
+				if((once | filled) != allValues) return false;
+				for(long hidden = once & ~twice; hidden != 0; hidden &= hidden - 1) {
+					long b = hidden & -hidden;
+					for(int k : unit) {
+						Spot s = cells[k];
+						if(s.isBlank() && (s.candidates() & b) != 0) {
+							place(s, lowestValue(b));
+							changed = true;
+							break;
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+	
+	private void place(Spot s, int value) {
+		s.set(value);
+		trail[trailSize++] = s.cell;
+		propagated++;
+	}
+	
+	/**
+	 * Clears every cell propagated since the trail was at mark.
+	 */
+	private void undo(int mark) {
+		while(trailSize > mark) {
+			cells[trail[--trailSize]].set(0);
+		}
+	}
+	
+	private final Comparator<Spot> byCandidates = new Comparator<Spot>() {
+		@Override
+		public int compare(Spot s1, Spot s2) {
+			return Long.bitCount(s1.candidates())
+					- Long.bitCount(s2.candidates());
+		}
+	};
+	
 	/**
 	 * Iterates over all the cells in the grid and selects those with 0
 	 * by calling the Spot constructor.
@@ -137,60 +823,265 @@ public class Sudoku {
 	 */
 	private List<Spot> sortedBlankCells() {
 		List<Spot> list = new ArrayList<Spot>();
-		for(int i = 0; i < SIZE; i++) {
-			for(int j = 0; j < SIZE; j++) {
-				if(get(i, j) == 0) list.add(new Spot(i, j));
-			}
+		for(Spot s : cells) {
+			if(s.isBlank()) list.add(s);
 		}
 		
-		Collections.sort(list, new Comparator<Spot>() {
-			@Override
-			public int compare(Spot s1, Spot s2) {
-				return s1.getValidNumbers().size() - s2.getValidNumbers().size();
-			}
-		});		
+		Collections.sort(list, byCandidates);
 		
 		return list;
 				
 	}
 	
+	/**
+	 * Selects how blank cells are ordered during the search.
+	 * Must be called before solve().
+	 */
+	public void setOrdering(Ordering ordering) {
+		this.ordering = ordering;
+	}
+	
+	public Ordering getOrdering() {
+		return ordering;
+	}
+	
+	/**
+	 * Turns naked/hidden single propagation on or off (on by default).
+	 * Must be called before solve().
+	 */
+	public void setPropagation(boolean propagation) {
+		this.propagation = propagation;
+	}
+	
+	/**
+	 * Asks a solve() running on another thread to stop at its next
+	 * search node. The count and solution are then incomplete.
+	 * Only the BACKTRACKING engine checks for this.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	/**
+	 * Turns on the statistics that cost something to gather: maximum
+	 * depth and candidate evaluations (off by default). The other
+	 * figures in getStats() are always kept. Must be called before solve().
+	 */
+	public void setCollectStats(boolean collectStats) {
+		this.collectStats = collectStats;
+	}
+	
+	/**
+	 * Returns the figures from the last solve(). Engines other than
+	 * BACKTRACKING only report the solution count and total time.
+	 */
+	public SolveStats getStats() {
+		return new SolveStats(count, nodes, backtracks, maxDepth, candidateEvaluations,
+				guesses, propagated, firstSolutionNanos, totalNanos);
+	}
+	
+	/**
+	 * Returns the number of search nodes visited by the last solve().
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+	
+	/**
+	 * Returns the number of values tried in cells that had more than
+	 * one candidate, i.e. the branches the search had to guess between.
+	 */
+	public long getGuesses() {
+		return guesses;
+	}
+	
+	/**
+	 * Returns the number of cells filled in by propagation, including
+	 * ones later undone on backtrack.
+	 */
+	public long getPropagated() {
+		return propagated;
+	}
+	
+	/**
+	 * Selects the search engine used by solve(). BACKTRACKING uses the
+	 * ordering and propagation settings; the others ignore them.
+	 * Must be called before solve().
+	 */
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+	
+	public Engine getEngine() {
+		return engine;
+	}
+	
+	/**
+	 * Sets how many solutions solve() counts before it stops
+	 * (MAX_SOLUTIONS by default). Must be called before solve().
+	 */
+	public void setMaxSolutions(int maxSolutions) {
+		this.maxSolutions = maxSolutions;
+	}
+	
 	public String getSolutionText() {
+		if(count == 0) return "";
+		if(solution == null) {
+			long began = System.nanoTime();
+			solution = gridToText(toGrid(solutionGrid));
+			if(metrics != null) metrics.record(SolverMetrics.Phase.FORMAT, System.nanoTime() - began);
+		}
 		return solution;
 	}
 	
+	/**
+	 * Returns a lazy iterator over the solutions of the grid as loaded,
+	 * independent of solve() and its solution limit.
+	 * @param limit most solutions to return
+	 * @param budgetMillis time the enumeration may take, or 0 for no limit
+	 */
+	public SolutionIterator solutions(int limit, long budgetMillis) {
+		return new SolutionIterator(toGrid(start), limit, budgetMillis);
+	}
+	
+	/**
+	 * Returns a copy of the first solution found, or null if none.
+	 */
+	public int[][] getSolution() {
+		return (count == 0) ? null : toGrid(solutionGrid);
+	}
+	
+	/**
+	 * Returns how long solve() took, in whole milliseconds; see
+	 * getElapsedNanos(). 0 before solve().
+	 */
 	public long getElapsed() {
-		return System.currentTimeMillis() - startTime;
+		return totalNanos / 1000000;
+	}
+	
+	/**
+	 * Returns the time spent in solve() and resume() since the last
+	 * load(), in nanoseconds. Construction, and time between resume()
+	 * calls, are not counted.
+	 */
+	public long getElapsedNanos() {
+		return totalNanos;
 	}
 	
 	
 	/**
 	 * Check if the grid is in a valid starting state.
+	 * One pass over the cells, keeping a bitmask of the values seen in
+	 * each row, column and box; stops at the first repeat.
 	 */
 	public boolean validate() {
+		if(metrics == null) return checkUnits();
+		long began = System.nanoTime();
+		boolean valid = checkUnits();
+		metrics.record(SolverMetrics.Phase.VALIDATE, System.nanoTime() - began);
+		return valid;
+	}
+	
+	private boolean checkUnits() {
+		Arrays.fill(seen, 0);
+		for(int cell = 0; cell < grid.length; cell++) {
+			int num = grid[cell];
+			if(num == 0) continue;
+			if(num < 0 || num > size) return false;
+			long b = bit(num);
+			int r = layout.rowOf[cell];
+			int c = size + layout.colOf[cell];
+			int x = 2 * size + layout.boxOf[cell];
+			if(((seen[r] | seen[c] | seen[x]) & b) != 0) return false;
+			seen[r] |= b;
+			seen[c] |= b;
+			seen[x] |= b;
+		}
+		return true;
+	}
+	
+	/**
+	 * Lists what makes the grid invalid, for showing to the user.
+	 * Each repeated value is paired with the first cell holding it in the
+	 * row, column or box they share, as {row, col, otherRow, otherCol};
+	 * a value outside 1..size is paired with itself. Empty if validate()
+	 * would return true.
+	 */
+	public List<int[]> getConflicts() {
+		List<int[]> conflicts = new ArrayList<int[]>();
+		if(checkUnits()) return conflicts;
+		int[] first = new int[3 * size * size];  // (unit, value) -> cell + 1
+		for(int cell = 0; cell < grid.length; cell++) {
+			int num = grid[cell];
+			if(num == 0) continue;
+			if(num < 0 || num > size) {
+				addConflict(conflicts, cell, cell);
+				continue;
+			}
+			int[] units = { layout.rowOf[cell], size + layout.colOf[cell],
+					2 * size + layout.boxOf[cell] };
+			for(int unit : units) {
+				int slot = unit * size + num - 1;
+				if(first[slot] == 0) first[slot] = cell + 1;
+				else addConflict(conflicts, first[slot] - 1, cell);
+			}
+		}
+		return conflicts;
+	}
+	
+	/**
+	 * Adds the pair of cells unless it is already listed, as a pair in
+	 * the same row and box would be.
+	 */
+	private void addConflict(List<int[]> conflicts, int a, int b) {
+		int[] pair = { layout.rowOf[a], layout.colOf[a], layout.rowOf[b], layout.colOf[b] };
+		for(int[] listed : conflicts) {
+			if(Arrays.equals(listed, pair)) return;
+		}
+		conflicts.add(pair);
+	}
+	
+	/**
+	 * Checks one 9x9 puzzle stored as 81 values from offset, in the
+	 * layout cellsToGrid() reads, without building a Sudoku: true if no
+	 * value is repeated in a row, column or box and all are 0..9.
+	 * Allocates nothing -- the masks live in locals -- so it suits
+	 * validating large batches straight out of a MappedPuzzleReader.
+	 */
+	public static boolean isValid(int[] cells, int offset) {
+		// Column j's values are bits 9j..9j+8 across colsLow (columns
+		// 0-6) and colsHigh (7-8); the current band's boxes share one
+		// int. Blanks give no bit, and repeats and out of range values
+		// are collected rather than branched on, one check per row.
+		long colsLow = 0, colsHigh = 0, clash = 0;
+		int boxes = 0;
 		for(int i = 0; i < SIZE; i++) {
+			if(i % PART == 0) boxes = 0;
+			int row = 0, range = 0;
 			for(int j = 0; j < SIZE; j++) {
-				int num = grid[i][j];
-				if(num != 0) {
-					for(int k = i + 1; k < SIZE; k++) {
-						if(num == grid[k][j]) {
-							return false;
-						}
-					}
-					for(int l = j + 1; l < SIZE; l++) {
-						if(num == grid[i][l]) {
-							return false;
-						}
-					}
-					for(int k = 0; k < PART; k++) {
-						for(int l = 0; l < PART; l++) {
-							int x = PART * (i / PART) + k, y = PART * (j / PART) + l;
-							if(!(x == i && y == j) && num == grid[x][y]) {
-								return false;
-							}
-						}
-					}
+				int num = cells[offset + i * SIZE + j];
+				range |= num | (SIZE - num);  // negative if outside 0..9
+				int b = (1 << num) >> 1;
+				clash |= row & b;
+				row |= b;
+				int boxBit = b << (SIZE * (j / PART));
+				clash |= boxes & boxBit;
+				boxes |= boxBit;
+				if(j < 7) {
+					long m = (long) b << (SIZE * j);
+					clash |= colsLow & m;
+					colsLow |= m;
+				} else {
+					long m = (long) b << (SIZE * (j - 7));
+					clash |= colsHigh & m;
+					colsHigh |= m;
 				}
 			}
+			if(clash != 0 || range < 0) return false;
 		}
 		return true;
 	}
@@ -248,7 +1139,81 @@ public class Sudoku {
 	
 	public static final int SIZE = 9;  // size of the whole 9x9 puzzle
 	public static final int PART = 3;  // size of each 3x3 part
-	public static final int MAX_SOLUTIONS = 100;
+	public static final int MAX_SOLUTIONS = 100;  // default limit, see setMaxSolutions() and main()
+	public static final int MIN_PART = 2;  // smallest box side, a 4x4 puzzle
+	public static final int MAX_PART = 6;  // largest box side, a 36x36 puzzle
+	
+	/**
+	 * STATIC sorts the blank cells once by candidate count before the
+	 * search; DYNAMIC picks the most constrained blank cell at every level.
+	 */
+	public enum Ordering { STATIC, DYNAMIC }
+	
+	/**
+	 * The search engines solve() can use.
+	 */
+	public enum Engine {
+		BACKTRACKING {
+			@Override
+			public SudokuSolver newSolver() { return new BacktrackingSolver(); }
+		},
+		DANCING_LINKS {
+			@Override
+			public SudokuSolver newSolver() { return new DancingLinksSolver(); }
+		},
+		PARALLEL {
+			@Override
+			public SudokuSolver newSolver() { return new ParallelSolver(); }
+		};
+		
+		/**
+		 * Returns a new solver instance for this engine.
+		 */
+		public abstract SudokuSolver newSolver();
+	}
+	
+	/**
+	 * Cell index tables for one grid size, shared by every Sudoku of
+	 * that size. Cells are numbered row * size + col.
+	 */
+	private static final class Layout {
+		private static final Layout[] BY_PART = new Layout[MAX_PART + 1];
+		
+		private final int size, cells;
+		private final int[] rowOf, colOf, boxOf;
+		private final int[][] units;  // every row, then column, then box
+		
+		private static synchronized Layout forSize(int size) {
+			int part = (int) Math.round(Math.sqrt(size));
+			if(part * part != size || part < MIN_PART || part > MAX_PART) {
+				throw new IllegalArgumentException("Grid side must be the square of "
+						+ MIN_PART + ".." + MAX_PART + ", but got " + size);
+			}
+			if(BY_PART[part] == null) BY_PART[part] = new Layout(part);
+			return BY_PART[part];
+		}
+		
+		private Layout(int part) {
+			size = part * part;
+			cells = size * size;
+			rowOf = new int[cells];
+			colOf = new int[cells];
+			boxOf = new int[cells];
+			units = new int[3 * size][size];
+			for(int i = 0; i < size; i++) {
+				for(int j = 0; j < size; j++) {
+					int cell = i * size + j;
+					int box = part * (i / part) + j / part;
+					rowOf[cell] = i;
+					colOf[cell] = j;
+					boxOf[cell] = box;
+					units[i][j] = cell;
+					units[size + j][i] = cell;
+					units[2 * size + box][part * (i % part) + j % part] = cell;
+				}
+			}
+		}
+	}
 	
 	// Provided various static utility methods to
 	// convert data formats to int[][] grid.
@@ -295,6 +1260,48 @@ public class Sudoku {
 	}
 	
 	
+	/**
+	 * Parses one puzzle in the common 81-characters-per-line format
+	 * into result, which must be a 9x9 grid. Digits are read row by row,
+	 * '0' or '.' marking a blank; other characters are skipped.
+	 * (Reuses result, so it is suitable for reading many puzzles.)
+	 * @param line puzzle line
+	 * @param result grid to fill
+	 * @return false if the line did not hold exactly 81 cells
+	 */
+	public static boolean lineToGrid(CharSequence line, int[][] result) {
+		int found = 0;
+		for (int i=0; i<line.length(); i++) {
+			char c = line.charAt(i);
+			int value;
+			if (c >= '0' && c <= '9') value = c - '0';
+			else if (c == '.') value = 0;
+			else continue;
+			if (found == SIZE*SIZE) return false;
+			result[found / SIZE][found % SIZE] = value;
+			found++;
+		}
+		return found == SIZE*SIZE;
+	}
+	
+	
+	/**
+	 * Copies 81 cells, row by row, from cells starting at offset into
+	 * result, which must be a 9x9 grid. Pairs with MappedPuzzleReader,
+	 * which decodes puzzle files straight into such flat arrays.
+	 * @param cells flat array of cells
+	 * @param offset index of the first cell
+	 * @param result grid to fill
+	 * @return result
+	 */
+	public static int[][] cellsToGrid(int[] cells, int offset, int[][] result) {
+		for (int row = 0; row<SIZE; row++) {
+			System.arraycopy(cells, offset + row*SIZE, result[row], 0, SIZE);
+		}
+		return result;
+	}
+	
+	
 	/**
 	 * Given a string containing digits, like "1 23 4",
 	 * returns an int[] of those digits {1 2 3 4}.
@@ -306,8 +1313,9 @@ public class Sudoku {
 		int[] a = new int[string.length()];
 		int found = 0;
 		for (int i=0; i<string.length(); i++) {
-			if (Character.isDigit(string.charAt(i))) {
-				a[found] = Integer.parseInt(string.substring(i, i+1));
+			int digit = Character.digit(string.charAt(i), 10);
+			if (digit >= 0) {
+				a[found] = digit;
 				found++;
 			}
 		}
@@ -316,16 +1324,25 @@ public class Sudoku {
 		return result;
 	}
 	
-	private static int[][] deepCopy(int[][] ints) {
-		if(ints.length == 0) return new int[0][0];
-		int length = ints.length, width = ints[0].length;
-		int[][] n = new int[length][width];
-		for(int i = 0; i < length; i++) {
-			for(int j = 0; j < width; j++) {
-				n[i][j] = ints[i][j];
-			}
+	/**
+	 * Copies a 2-d grid into a flat one, row by row.
+	 */
+	private static void copyInto(int[][] from, int[] to) {
+		int width = from.length;
+		for(int i = 0; i < width; i++) {
+			System.arraycopy(from[i], 0, to, i * width, width);
 		}
-		return n;
+	}
+	
+	/**
+	 * Returns a new 2-d grid from a flat square one.
+	 */
+	private int[][] toGrid(int[] flat) {
+		int[][] result = new int[size][size];
+		for(int i = 0; i < size; i++) {
+			System.arraycopy(flat, i * size, result[i], 0, size);
+		}
+		return result;
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,427 @@
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+/*
+ * Solves a file of puzzles on a pool of worker threads.
+ * CS108 Stanford.
+ *
+ * Puzzles are read one per line in the common 81-character format
+ * (see Sudoku.lineToGrid) and handed to the workers in chunks. Each
+ * worker thread keeps one SudokuSolver and one grid for all the
+ * puzzles it sees, and encodes its results straight into bytes; the
+ * finished chunks are written in input order. Each puzzle is checked
+ * with Sudoku.isValid() first, and one whose clues clash is reported
+ * with no solutions, whatever the engine.
+ */
+public class SudokuBatch {
+
+	private static final int CHUNK = 512;  // puzzles per task
+	private static final int PENDING_PER_THREAD = 4;  // chunks in flight
+	private static final int CELLS = Sudoku.SIZE * Sudoku.SIZE;
+
+	/**
+	 * How results are written.
+	 */
+	public enum Format {
+		/** The solution as 81 digits, a space and the number of solutions. */
+		TEXT,
+		/** The solutions and counts as records of a counted PuzzleFile. */
+		BINARY,
+		/** A row of figures per puzzle, after a row of column names. */
+		CSV
+	}
+
+	private final int threads;
+	private final Sudoku.Engine engine;
+	private final int limit;
+	private final CanonicalCache cache;
+	private SolverMetrics metrics;
+	private Format format = Format.TEXT;
+
+	private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+		@Override
+		protected Worker initialValue() {
+			return new Worker();
+		}
+	};
+
+	/**
+	 * @param threads number of worker threads
+	 * @param engine engine every worker uses
+	 * @param limit maximum number of solutions to count per puzzle
+	 */
+	public SudokuBatch(int threads, Sudoku.Engine engine, int limit) {
+		this(threads, engine, limit, null);
+	}
+
+	/**
+	 * @param cache shared by the workers so symmetric copies of a puzzle
+	 * are solved once, or null to solve every puzzle
+	 */
+	public SudokuBatch(int threads, Sudoku.Engine engine, int limit, CanonicalCache cache) {
+		this.threads = threads;
+		this.engine = engine;
+		this.limit = limit;
+		this.cache = cache;
+	}
+
+	/**
+	 * Times every puzzle's parse, search and formatting into metrics,
+	 * along with the backtracking engine's setup. Must be called before
+	 * run().
+	 */
+	public void setMetrics(SolverMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Selects the output format, TEXT by default. Must be called before
+	 * run().
+	 */
+	public void setFormat(Format format) {
+		this.format = format;
+	}
+
+	/**
+	 * Writes what goes before the first result: the PuzzleFile header
+	 * for BINARY, the column names for CSV. Once per output, however
+	 * many inputs are run into it.
+	 */
+	public void writeHeader(OutputStream out) throws IOException {
+		if(format == Format.BINARY) {
+			PuzzleFile.writeHeader(out, Sudoku.SIZE, true);
+		} else if(format == Format.CSV) {
+			out.write("puzzle,solutions,micros,nodes,guesses\n".getBytes("US-ASCII"));
+		}
+	}
+
+	/**
+	 * Solves every puzzle read from in and writes one result per puzzle
+	 * to out. In TEXT format that is a line holding the solution as 81
+	 * digits (the puzzle itself if it has none), a space, and the number
+	 * of solutions; a line that does not hold 81 cells is echoed followed
+	 * by " error". BINARY writes the same grid and number as a record of a
+	 * counted PuzzleFile, an empty grid and -1 for a malformed line. CSV
+	 * writes the puzzle, the number of solutions, the time taken and, for
+	 * the BACKTRACKING engine without a cache, the nodes and guesses; a
+	 * malformed line gives "error" and empty figures. Blank lines and
+	 * lines starting with # are skipped. out is flushed at the end but
+	 * not closed.
+	 * @return number of puzzles read
+	 */
+	public long run(BufferedReader in, OutputStream out) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+		long puzzles = 0;
+		try {
+			String[] chunk = new String[CHUNK];
+			int n = 0;
+			String line;
+			while((line = in.readLine()) != null) {
+				line = line.trim();
+				if(line.length() == 0 || line.startsWith("#")) continue;
+				chunk[n++] = line;
+				puzzles++;
+				if(n == CHUNK) {
+					submit(pool, pending, lineTask(chunk, n), out);
+					chunk = new String[CHUNK];
+					n = 0;
+				}
+			}
+			if(n > 0) submit(pool, pending, lineTask(chunk, n), out);
+			while(!pending.isEmpty()) {
+				out.write(result(pending.poll()));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		out.flush();
+		return puzzles;
+	}
+
+	/**
+	 * Same as run(BufferedReader, OutputStream), but decodes the puzzles
+	 * straight from a memory-mapped file with no String per line.
+	 * A malformed line is written as just "error" in TEXT format.
+	 * @return number of puzzles read
+	 */
+	public long run(MappedPuzzleReader in, OutputStream out) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+		long puzzles = 0;
+		try {
+			int[] cells = new int[CHUNK * CELLS];
+			boolean[] valid = new boolean[CHUNK];
+			int n = 0;
+			int found;
+			while((found = in.next(cells, n * CELLS)) >= 0) {
+				valid[n] = (found == CELLS);
+				n++;
+				puzzles++;
+				if(n == CHUNK) {
+					submit(pool, pending, cellTask(cells, valid, n), out);
+					cells = new int[CHUNK * CELLS];
+					valid = new boolean[CHUNK];
+					n = 0;
+				}
+			}
+			if(n > 0) submit(pool, pending, cellTask(cells, valid, n), out);
+			while(!pending.isEmpty()) {
+				out.write(result(pending.poll()));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		out.flush();
+		return puzzles;
+	}
+
+	private Callable<byte[]> lineTask(final String[] lines, final int n) {
+		return new Callable<byte[]>() {
+			@Override
+			public byte[] call() {
+				return workers.get().solve(lines, n);
+			}
+		};
+	}
+
+	private Callable<byte[]> cellTask(final int[] cells, final boolean[] valid, final int n) {
+		return new Callable<byte[]>() {
+			@Override
+			public byte[] call() {
+				return workers.get().solve(cells, valid, n);
+			}
+		};
+	}
+
+	/**
+	 * Queues a chunk, first writing out the oldest finished chunks if
+	 * too many are in flight.
+	 */
+	private void submit(ExecutorService pool, ArrayDeque<Future<byte[]>> pending,
+			Callable<byte[]> task, OutputStream out) throws IOException {
+		while(pending.size() >= threads * PENDING_PER_THREAD) {
+			out.write(result(pending.poll()));
+		}
+		pending.add(pool.submit(task));
+	}
+
+	private static byte[] result(Future<byte[]> future) throws IOException {
+		try {
+			return future.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for a worker");
+		} catch(ExecutionException e) {
+			throw new IOException("Worker failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Per-thread solver state, reused for every puzzle on that thread.
+	 */
+	private class Worker {
+		private final SudokuSolver solver = engine.newSolver();
+		private final int[][] grid = new int[Sudoku.SIZE][Sudoku.SIZE];
+		private final int[][] solution = new int[Sudoku.SIZE][Sudoku.SIZE];
+		private final int[][] blank = new int[Sudoku.SIZE][Sudoku.SIZE];
+		private final int[] cells = new int[CELLS];  // grid flattened for isValid()
+		// The chunk's output so far.
+		private byte[] bytes = new byte[CHUNK * (CELLS + 8)];
+		private int length;
+		// Whether the search is timed here rather than inside the solver.
+		private final boolean timeSearch;
+
+		private Worker() {
+			if(metrics != null && solver instanceof BacktrackingSolver) {
+				((BacktrackingSolver) solver).setMetrics(metrics);
+				timeSearch = false;
+			} else {
+				timeSearch = (metrics != null);
+			}
+		}
+
+		private byte[] solve(String[] lines, int n) {
+			length = 0;
+			for(int i = 0; i < n; i++) {
+				long began = System.nanoTime();
+				boolean parsed = Sudoku.lineToGrid(lines[i], grid);
+				if(metrics != null) metrics.record(SolverMetrics.Phase.PARSE, System.nanoTime() - began);
+				if(parsed) {
+					appendResult();
+				} else {
+					appendError(lines[i]);
+				}
+			}
+			return Arrays.copyOf(bytes, length);
+		}
+
+		private byte[] solve(int[] cells, boolean[] valid, int n) {
+			length = 0;
+			for(int i = 0; i < n; i++) {
+				if(valid[i]) {
+					long began = System.nanoTime();
+					Sudoku.cellsToGrid(cells, i * CELLS, grid);
+					if(metrics != null) metrics.record(SolverMetrics.Phase.PARSE, System.nanoTime() - began);
+					appendResult();
+				} else {
+					appendError(null);
+				}
+			}
+			return Arrays.copyOf(bytes, length);
+		}
+
+		/**
+		 * Validates and solves grid and appends its result.
+		 */
+		private void appendResult() {
+			int count;
+			int[][] result;
+			long checked = System.nanoTime();
+			for(int i = 0; i < Sudoku.SIZE; i++) {
+				System.arraycopy(grid[i], 0, cells, i * Sudoku.SIZE, Sudoku.SIZE);
+			}
+			boolean valid = Sudoku.isValid(cells, 0);
+			long began = System.nanoTime();
+			if(metrics != null) metrics.record(SolverMetrics.Phase.VALIDATE, began - checked);
+			if(!valid) {
+				count = 0;
+				result = grid;
+			} else if(cache != null) {
+				count = cache.solve(grid, solver, limit, solution);
+				result = (count > 0) ? solution : grid;
+			} else {
+				count = solver.solve(grid, limit);
+				result = (count > 0) ? solver.getSolution() : grid;
+			}
+			long solved = System.nanoTime();
+			if(timeSearch && valid) {
+				metrics.record(SolverMetrics.Phase.SEARCH, solved - began);
+				metrics.recordSolve(count, 0);
+			}
+			reserve(2 * CELLS + 64);
+			if(format == Format.TEXT) {
+				appendDigits(result);
+				bytes[length++] = ' ';
+				appendNumber(count);
+				bytes[length++] = '\n';
+			} else if(format == Format.BINARY) {
+				length += PuzzleFile.encode(result, count, bytes, length);
+			} else {
+				appendDigits(grid);
+				bytes[length++] = ',';
+				appendNumber(count);
+				bytes[length++] = ',';
+				appendNumber((solved - began) / 1000);
+				bytes[length++] = ',';
+				SolveStats stats = (valid && cache == null && solver instanceof BacktrackingSolver)
+						? ((BacktrackingSolver) solver).getStats() : null;
+				if(stats != null) appendNumber(stats.getNodes());
+				bytes[length++] = ',';
+				if(stats != null) appendNumber(stats.getGuesses());
+				bytes[length++] = '\n';
+			}
+			if(metrics != null) metrics.record(SolverMetrics.Phase.FORMAT, System.nanoTime() - solved);
+		}
+
+		/**
+		 * Appends the result for a malformed line, which is echoed in TEXT
+		 * format if given.
+		 */
+		private void appendError(String line) {
+			if(format == Format.BINARY) {
+				reserve(CELLS + 4);
+				length += PuzzleFile.encode(blank, -1, bytes, length);
+				return;
+			}
+			String text = (format == Format.CSV) ? "error,,,,\n"
+					: (line == null) ? "error\n" : line + " error\n";
+			byte[] b;
+			try {
+				b = text.getBytes("UTF-8");
+			} catch(UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+			reserve(b.length);
+			System.arraycopy(b, 0, bytes, length, b.length);
+			length += b.length;
+		}
+
+		private void appendDigits(int[][] g) {
+			for(int[] row : g) {
+				for(int value : row) bytes[length++] = (byte) ('0' + value);
+			}
+		}
+
+		private void appendNumber(long n) {
+			if(n < 0) {
+				bytes[length++] = '-';
+				n = -n;
+			}
+			int from = length;
+			do {
+				bytes[length++] = (byte) ('0' + n % 10);
+				n /= 10;
+			} while(n > 0);
+			for(int i = from, j = length - 1; i < j; i++, j--) {
+				byte t = bytes[i];
+				bytes[i] = bytes[j];
+				bytes[j] = t;
+			}
+		}
+
+		/**
+		 * Makes room for n more bytes.
+		 */
+		private void reserve(int n) {
+			if(length + n > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + n));
+		}
+	}
+
+	/**
+	 * Usage: SudokuBatch puzzles [output [threads [engine [cache [metrics]]]]]
+	 * Output defaults to standard out, threads to the number of cores
+	 * and engine to BACKTRACKING. cache is the number of canonical
+	 * puzzles to remember, 0 (the default) for none. If a metrics file
+	 * is named, per-phase latencies are written to it in the Prometheus
+	 * text format. Throughput, the cache's hit ratio and the latency
+	 * percentiles are reported on standard error.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) {
+			System.err.println("Usage: SudokuBatch puzzles [output [threads [engine [cache [metrics]]]]]");
+			System.exit(1);
+		}
+		int threads = (args.length > 2) ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+		Sudoku.Engine engine = (args.length > 3)
+				? Sudoku.Engine.valueOf(args[3].toUpperCase()) : Sudoku.Engine.BACKTRACKING;
+		int cacheSize = (args.length > 4) ? Integer.parseInt(args[4]) : 0;
+		CanonicalCache cache = (cacheSize > 0) ? new CanonicalCache(cacheSize) : null;
+		File metricsFile = (args.length > 5) ? new File(args[5]) : null;
+		SolverMetrics metrics = (metricsFile != null) ? new SolverMetrics() : null;
+
+		MappedPuzzleReader in = new MappedPuzzleReader(new File(args[0]));
+		OutputStream out = new BufferedOutputStream((args.length > 1)
+				? new FileOutputStream(args[1]) : System.out, 1 << 16);
+		try {
+			long start = System.nanoTime();
+			SudokuBatch batch = new SudokuBatch(threads, engine, Sudoku.MAX_SOLUTIONS, cache);
+			batch.setMetrics(metrics);
+			long puzzles = batch.run(in, out);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.err.printf("%d puzzles in %.3fs: %.0f puzzles/s (%d threads, %s)%n",
+					puzzles, seconds, puzzles / seconds, threads, engine);
+			if(cache != null) System.err.println(cache.getSummary());
+			if(metrics != null) {
+				System.err.print(metrics.getSummary());
+				metrics.writePrometheus(metricsFile);
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+}
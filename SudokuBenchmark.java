@@ -0,0 +1,379 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * Simple timing harness for the Sudoku solver.
+ * Runs the built-in grids through the different search modes and
+ * prints node counts and average wall time per solve.
+ */
+public class SudokuBenchmark {
+
+	private static final int WARMUP = 200;
+	private static final int RUNS = 500;
+	private static final int VALIDATIONS = 1000000;
+
+	private static final String[] NAMES = {
+		"easy", "medium", "hard", "hard (7 cleared)", "unsolvable" };
+
+	/**
+	 * Returns the built-in grids, in the same order as NAMES.
+	 */
+	public static int[][][] builtInGrids() {
+		int[][] hardOpen = Sudoku.textToGrid(Sudoku.gridToText(Sudoku.hardGrid));
+		hardOpen[0][1] = 0;
+		return new int[][][] { Sudoku.easyGrid, Sudoku.mediumGrid,
+				Sudoku.hardGrid, hardOpen, Sudoku.unsolvableGrid };
+	}
+
+	public static void main(String[] args) {
+		compareOrderings();
+		compareEngines();
+		compareParallel();
+		compareLargeGrids();
+		compareValidation();
+		compareCores();
+	}
+
+	/**
+	 * Static (sorted once) versus dynamic (most constrained cell first)
+	 * ordering on each built-in grid, with and without propagation.
+	 */
+	private static void compareOrderings() {
+		System.out.println("== ordering: static vs dynamic ==");
+		System.out.printf("%-18s %-8s %-5s %10s %10s %8s %8s %12s%n", "grid",
+				"ordering", "prop", "solutions", "nodes", "guesses", "filled", "avg us");
+		int[][][] grids = builtInGrids();
+		for(int g = 0; g < grids.length; g++) {
+			for(Sudoku.Ordering o : Sudoku.Ordering.values()) {
+				for(int p = 0; p < 2; p++) {
+					boolean prop = p == 1;
+					for(int i = 0; i < WARMUP; i++) solveWith(grids[g], o, prop);
+					long start = System.nanoTime();
+					Sudoku last = null;
+					for(int i = 0; i < RUNS; i++) last = solveWith(grids[g], o, prop);
+					long avg = (System.nanoTime() - start) / RUNS;
+					System.out.printf("%-18s %-8s %-5s %10d %10d %8d %8d %12.1f%n",
+							NAMES[g], o, prop, last.solve(), last.getNodes(),
+							last.getGuesses(), last.getPropagated(), avg / 1000.0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Each engine counting up to MAX_SOLUTIONS solutions of the built-in
+	 * grids, reusing one solver instance per engine.
+	 */
+	private static void compareEngines() {
+		System.out.println("== engines ==");
+		System.out.printf("%-18s %-14s %10s %12s%n", "grid", "engine", "solutions", "avg us");
+		int[][][] grids = builtInGrids();
+		for(int g = 0; g < grids.length; g++) {
+			for(Sudoku.Engine e : Sudoku.Engine.values()) {
+				SudokuSolver solver = e.newSolver();
+				for(int i = 0; i < WARMUP; i++) solver.solve(grids[g], Sudoku.MAX_SOLUTIONS);
+				long start = System.nanoTime();
+				int count = 0;
+				for(int i = 0; i < RUNS; i++) count = solver.solve(grids[g], Sudoku.MAX_SOLUTIONS);
+				long avg = (System.nanoTime() - start) / RUNS;
+				System.out.printf("%-18s %-14s %10d %12.1f%n", NAMES[g], e, count, avg / 1000.0);
+			}
+		}
+	}
+
+	/**
+	 * Sequential solve() against ParallelSolver on pools of 1, 2, 4 and
+	 * 8 threads. Uses hardGrid with its first two rows cleared, which
+	 * has 206 solutions, and an empty grid where the search is cut off
+	 * at the limit.
+	 */
+	private static void compareParallel() {
+		System.out.println("== parallel (" + Runtime.getRuntime().availableProcessors()
+				+ " cores available) ==");
+		int[][] openRows = Sudoku.textToGrid(Sudoku.gridToText(Sudoku.hardGrid));
+		Arrays.fill(openRows[0], 0);
+		Arrays.fill(openRows[1], 0);
+		String[] names = { "hard, rows 0-1 open", "empty" };
+		int[][][] grids = { openRows, new int[Sudoku.SIZE][Sudoku.SIZE] };
+		int[] limits = { 100000, 100000 };
+		System.out.printf("%-20s %-10s %10s %12s %8s%n",
+				"grid", "threads", "solutions", "avg ms", "speedup");
+		for(int g = 0; g < grids.length; g++) {
+			SudokuSolver sequential = new BacktrackingSolver(Sudoku.Ordering.DYNAMIC);
+			long base = time(sequential, grids[g], limits[g]);
+			System.out.printf("%-20s %-10s %10d %12.2f %8s%n", names[g], "sequential",
+					sequential.solve(grids[g], limits[g]), base / 1e6, "1.00");
+			for(int threads = 1; threads <= 8; threads *= 2) {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				SudokuSolver parallel = new ParallelSolver(pool);
+				long t = time(parallel, grids[g], limits[g]);
+				System.out.printf("%-20s %-10d %10d %12.2f %8.2f%n", names[g], threads,
+						parallel.solve(grids[g], limits[g]), t / 1e6, (double) base / t);
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * 16x16 and 25x25 puzzles, searching for a first solution with each
+	 * search mode. STATIC ordering without propagation is left out: it
+	 * does not finish on grids this size.
+	 */
+	private static void compareLargeGrids() {
+		System.out.println("== large grids ==");
+		System.out.printf("%-8s %-8s %-5s %8s %10s %8s %12s%n",
+				"grid", "ordering", "prop", "clues", "nodes", "guesses", "avg ms");
+		for(int part = 4; part <= 5; part++) {
+			int size = part * part;
+			int[][] grid = randomPuzzle(part, 0.55, 108);
+			int clues = 0;
+			for(int[] row : grid) {
+				for(int v : row) if(v != 0) clues++;
+			}
+			for(Sudoku.Ordering o : Sudoku.Ordering.values()) {
+				for(int p = 0; p < 2; p++) {
+					boolean prop = p == 1;
+					if(!prop && o == Sudoku.Ordering.STATIC) continue;
+					int runs = 5;
+					Sudoku last = null;
+					long start = 0;
+					for(int i = 0; i < 2 * runs; i++) {
+						if(i == runs) start = System.nanoTime();
+						last = new Sudoku(grid);
+						last.setOrdering(o);
+						last.setPropagation(prop);
+						last.setMaxSolutions(1);
+						last.solve();
+					}
+					long avg = (System.nanoTime() - start) / runs;
+					System.out.printf("%-8s %-8s %-5s %8d %10d %8d %12.2f%n", size + "x" + size,
+							o, prop, clues, last.getNodes(), last.getGuesses(), avg / 1e6);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The recursive search against the iterative one, which should
+	 * visit the same number of nodes, on each built-in grid and on an
+	 * empty grid and a 25x25 puzzle (first solution only), where the
+	 * recursion runs deepest.
+	 */
+	private static void compareCores() {
+		System.out.println("== recursive vs iterative ==");
+		System.out.printf("%-18s %-8s %10s %10s %12s %12s%n",
+				"grid", "ordering", "solutions", "nodes", "recursive us", "iterative us");
+		int[][][] builtIn = builtInGrids();
+		int[][][] grids = Arrays.copyOf(builtIn, builtIn.length + 2);
+		grids[builtIn.length] = new int[Sudoku.SIZE][Sudoku.SIZE];
+		grids[builtIn.length + 1] = randomPuzzle(5, 0.55, 108);
+		String[] names = Arrays.copyOf(NAMES, NAMES.length + 2);
+		names[NAMES.length] = "empty";
+		names[NAMES.length + 1] = "25x25";
+		for(int g = 0; g < grids.length; g++) {
+			boolean large = grids[g].length > Sudoku.SIZE;
+			int runs = large ? 5 : RUNS;
+			for(Sudoku.Ordering o : Sudoku.Ordering.values()) {
+				long[] nanos = new long[2];
+				Sudoku last = null;
+				for(int r = 0; r < 2; r++) {
+					long start = 0;
+					for(int i = 0; i < 2 * runs; i++) {
+						if(i == runs) start = System.nanoTime();
+						last = new Sudoku(grids[g]);
+						last.setOrdering(o);
+						last.setRecursive(r == 0);
+						if(large) last.setMaxSolutions(1);
+						last.solve();
+					}
+					nanos[r] = (System.nanoTime() - start) / runs;
+				}
+				System.out.printf("%-18s %-8s %10d %10d %12.1f %12.1f%n", names[g], o,
+						last.getStats().getSolutions(), last.getNodes(), nanos[0] / 1000.0, nanos[1] / 1000.0);
+			}
+		}
+	}
+
+	/**
+	 * The old validate(), rescanning the rest of each filled cell's row,
+	 * column and box, against the single bitmask pass of validate() and
+	 * of the static Sudoku.isValid(), over VALIDATIONS puzzles. Half the
+	 * puzzles have one repeated value put somewhere at random, so the
+	 * early exits count too. validate() runs on Sudokus loaded
+	 * beforehand; the others read the cells back to back as
+	 * MappedPuzzleReader delivers them.
+	 */
+	private static void compareValidation() {
+		System.out.println("== validation ==");
+		System.out.printf("%-10s %12s %12s %10s%n", "method", "grids", "grids/s", "MB/s");
+		int batch = 2000, cellCount = Sudoku.SIZE * Sudoku.SIZE;
+		int[] cells = new int[batch * cellCount];
+		Sudoku[] sudokus = new Sudoku[batch];
+		Random random = new Random(42);
+		int expected = 0;
+		for(int p = 0; p < batch; p++) {
+			int[][] grid = randomPuzzle(Sudoku.PART, 0.4, p);
+			if(p % 2 == 1) addConflict(grid, random);
+			else expected++;
+			for(int i = 0; i < Sudoku.SIZE; i++) {
+				System.arraycopy(grid[i], 0, cells, p * cellCount + i * Sudoku.SIZE, Sudoku.SIZE);
+			}
+			sudokus[p] = new Sudoku(grid);
+		}
+		expected *= VALIDATIONS / batch;
+		String[] methods = { "rescan", "validate", "isValid" };
+		for(int m = 0; m < methods.length; m++) {
+			long start = 0;
+			int valid = 0;
+			for(int pass = 0; pass < 2 * VALIDATIONS / batch; pass++) {
+				if(pass == VALIDATIONS / batch) {  // first half is warmup
+					start = System.nanoTime();
+					valid = 0;
+				}
+				for(int p = 0; p < batch; p++) {
+					boolean ok;
+					if(m == 0) ok = rescanValid(cells, p * cellCount);
+					else if(m == 1) ok = sudokus[p].validate();
+					else ok = Sudoku.isValid(cells, p * cellCount);
+					if(ok) valid++;
+				}
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			if(valid != expected) {
+				System.out.println("  " + methods[m] + " passed " + valid + " grids, not " + expected);
+			}
+			System.out.printf("%-10s %12d %12.0f %10.0f%n", methods[m], VALIDATIONS,
+					VALIDATIONS / seconds, VALIDATIONS * cellCount * 4.0 / seconds / 1e6);
+		}
+	}
+
+	/**
+	 * Copies the value of a random cell, given one if it was blank, to
+	 * another cell of its row, column or box.
+	 */
+	private static void addConflict(int[][] grid, Random random) {
+		int size = grid.length, part = (int) Math.round(Math.sqrt(size));
+		int i = random.nextInt(size), j = random.nextInt(size);
+		if(grid[i][j] == 0) grid[i][j] = random.nextInt(size) + 1;
+		int k, l;
+		do {
+			switch(random.nextInt(3)) {
+			case 0:
+				k = i;
+				l = random.nextInt(size);
+				break;
+			case 1:
+				k = random.nextInt(size);
+				l = j;
+				break;
+			default:
+				k = part * (i / part) + random.nextInt(part);
+				l = part * (j / part) + random.nextInt(part);
+			}
+		} while(k == i && l == j);
+		grid[k][l] = grid[i][j];
+	}
+
+	/**
+	 * validate() as it was, on 81 flat cells from offset.
+	 */
+	private static boolean rescanValid(int[] cells, int offset) {
+		int size = Sudoku.SIZE, part = Sudoku.PART;
+		for(int i = 0; i < size; i++) {
+			for(int j = 0; j < size; j++) {
+				int num = cells[offset + i * size + j];
+				if(num != 0) {
+					for(int k = i + 1; k < size; k++) {
+						if(num == cells[offset + k * size + j]) return false;
+					}
+					for(int l = j + 1; l < size; l++) {
+						if(num == cells[offset + i * size + l]) return false;
+					}
+					for(int k = 0; k < part; k++) {
+						for(int l = 0; l < part; l++) {
+							int x = part * (i / part) + k, y = part * (j / part) + l;
+							if(!(x == i && y == j) && num == cells[offset + x * size + y]) return false;
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Builds a puzzle of side part * part: a full grid from the usual
+	 * shifted-rows pattern, with its digits relabelled and its rows and
+	 * columns shuffled within bands and stacks, then a random
+	 * (1 - clueFraction) of the cells blanked. It has at least one
+	 * solution, but not necessarily only one.
+	 */
+	public static int[][] randomPuzzle(int part, double clueFraction, long seed) {
+		Random random = new Random(seed);
+		int size = part * part;
+		int[] digits = shuffled(size, random);
+		int[] rows = bandShuffle(part, random);
+		int[] cols = bandShuffle(part, random);
+		int[][] grid = new int[size][size];
+		for(int i = 0; i < size; i++) {
+			for(int j = 0; j < size; j++) {
+				int r = rows[i], c = cols[j];
+				int pattern = (part * (r % part) + r / part + c) % size;
+				grid[i][j] = (random.nextDouble() < clueFraction) ? digits[pattern] + 1 : 0;
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * Random permutation of 0..n-1.
+	 */
+	private static int[] shuffled(int n, Random random) {
+		int[] a = new int[n];
+		for(int i = 0; i < n; i++) a[i] = i;
+		for(int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int t = a[i];
+			a[i] = a[j];
+			a[j] = t;
+		}
+		return a;
+	}
+
+	/**
+	 * Random order of the lines of a grid that keeps each band together:
+	 * the bands are shuffled, and so are the lines within each band.
+	 */
+	private static int[] bandShuffle(int part, Random random) {
+		int[] bands = shuffled(part, random);
+		int[] result = new int[part * part];
+		for(int b = 0; b < part; b++) {
+			int[] within = shuffled(part, random);
+			for(int k = 0; k < part; k++) {
+				result[b * part + k] = bands[b] * part + within[k];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Average nanoseconds for solver to count up to limit solutions.
+	 */
+	private static long time(SudokuSolver solver, int[][] grid, int limit) {
+		int runs = 5;
+		for(int i = 0; i < runs; i++) solver.solve(grid, limit);
+		long start = System.nanoTime();
+		for(int i = 0; i < runs; i++) solver.solve(grid, limit);
+		return (System.nanoTime() - start) / runs;
+	}
+
+	private static Sudoku solveWith(int[][] grid, Sudoku.Ordering ordering,
+			boolean propagation) {
+		Sudoku s = new Sudoku(grid);
+		s.setOrdering(ordering);
+		s.setPropagation(propagation);
+		s.solve();
+		return s;
+	}
+}
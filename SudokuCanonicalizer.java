@@ -0,0 +1,330 @@
+/*
+ * Maps a 9x9 grid to a canonical form under the Sudoku symmetry group.
+ * CS108 Stanford.
+ *
+ * Two grids that differ only by transposition, reordering of bands or
+ * stacks, reordering of rows within a band or columns within a stack,
+ * and relabelling of digits have the same canonical form.
+ *
+ * Clue counts are not changed by any of those, so the form first puts
+ * the clues up front: bands in decreasing order of their rows' clue
+ * counts, rows within a band by decreasing clue count, the same for
+ * stacks and columns, and the orientation whose bands rank higher.
+ * Among the arrangements left when counts tie, it is the
+ * lexicographically smallest grid (row by row, blanks first) with
+ * digits relabelled 1, 2, 3... in order of first appearance. Only tied
+ * arrangements are searched, so a typical puzzle tries a handful rather
+ * than all 2 x 1296 x 1296.
+ *
+ * Rows are chosen depth first under each column arrangement, only
+ * following rows that tie for smallest and abandoning any prefix
+ * larger than the best found so far. The transformation that produced
+ * the best grid is kept, so solutions of the canonical grid can be
+ * mapped back to the caller's orientation.
+ *
+ * Not thread-safe; keep one instance per thread.
+ */
+public class SudokuCanonicalizer {
+
+	private static final int SIZE = Sudoku.SIZE;
+	private static final int PART = Sudoku.PART;
+	private static final int CELLS = SIZE * SIZE;
+	private static final int[][] PERMS = {
+		{ 0, 1, 2 }, { 0, 2, 1 }, { 1, 0, 2 }, { 1, 2, 0 }, { 2, 0, 1 }, { 2, 1, 0 } };
+
+	// Input, flattened, as given and transposed, with the clue count of
+	// each row and the counts of each band's rows packed in decreasing order.
+	private final int[][] frames = new int[2][CELLS];
+	private final int[][] rowClues = new int[2][SIZE];
+	private final int[][] bandClues = new int[2][PART];
+
+	// Arrangement being tried.
+	private int[] cells;
+	private boolean transposed;
+	private int[] clues, bands;  // rowClues and bandClues of cells
+	private final int[] colOrder = new int[SIZE];
+	private final int[] rowOrder = new int[SIZE];
+	private final boolean[] rowUsed = new boolean[SIZE];
+	private final int[] label = new int[SIZE + 1];  // digit -> label, 0 if none yet
+	private int nextLabel;
+
+	// Scratch rows per depth: the candidate rows and their relabelled values.
+	private final int[][] candidates = new int[SIZE][SIZE];
+	private final int[][][] rowValues = new int[SIZE][SIZE][SIZE];
+
+	// Best grid so far and the arrangement that gave it.
+	private final int[] best = new int[CELLS];
+	private int bestRows;  // rows of best that are valid
+	private boolean improved;
+	private boolean bestTransposed;
+	private final int[] bestRowOrder = new int[SIZE];
+	private final int[] bestColOrder = new int[SIZE];
+	private final int[] bestLabel = new int[SIZE + 1];
+
+	/**
+	 * Computes the canonical form of grid.
+	 * @param grid 9x9 grid, 0 for blank
+	 * @param result 81 cells, overwritten with the canonical grid row by row
+	 */
+	public void canonicalize(int[][] grid, int[] result) {
+		if(grid.length != SIZE) {
+			throw new IllegalArgumentException("Only 9x9 grids have a canonical form here");
+		}
+		for(int i = 0; i < SIZE; i++) {
+			for(int j = 0; j < SIZE; j++) {
+				frames[0][i * SIZE + j] = grid[i][j];
+				frames[1][j * SIZE + i] = grid[i][j];
+			}
+		}
+		for(int t = 0; t < 2; t++) {
+			countClues(frames[t], rowClues[t], bandClues[t]);
+		}
+		int ranking = compareProfiles(bandClues[0], bandClues[1]);
+		bestRows = 0;
+		for(int t = 0; t < 2; t++) {
+			if((t == 0) ? ranking < 0 : ranking > 0) continue;
+			cells = frames[t];
+			transposed = (t == 1);
+			clues = rowClues[t];
+			bands = bandClues[t];
+			arrangeColumns(rowClues[1 - t], bandClues[1 - t]);
+		}
+		System.arraycopy(best, 0, result, 0, CELLS);
+	}
+
+	/**
+	 * Maps a solution of the canonical grid, given as 81 cells, back to
+	 * the orientation and digits of the grid last passed to canonicalize().
+	 * @param canonical solution of the canonical grid
+	 * @param result grid to fill with the solution of the original grid
+	 */
+	public void toOriginal(int[] canonical, int[][] result) {
+		int[] digitOf = inverseLabels();
+		for(int i = 0; i < SIZE; i++) {
+			for(int j = 0; j < SIZE; j++) {
+				int r = bestRowOrder[i], c = bestColOrder[j];
+				int value = digitOf[canonical[i * SIZE + j]];
+				if(bestTransposed) result[c][r] = value;
+				else result[r][c] = value;
+			}
+		}
+	}
+
+	/**
+	 * Maps a solution of the grid last passed to canonicalize() into the
+	 * canonical orientation and labels, the inverse of toOriginal().
+	 * @param solution solution of the original grid
+	 * @param result 81 cells to fill with the solution of the canonical grid
+	 */
+	public void toCanonical(int[][] solution, int[] result) {
+		int[] labelOf = completeLabels();
+		for(int i = 0; i < SIZE; i++) {
+			for(int j = 0; j < SIZE; j++) {
+				int r = bestRowOrder[i], c = bestColOrder[j];
+				int value = bestTransposed ? solution[c][r] : solution[r][c];
+				result[i * SIZE + j] = labelOf[value];
+			}
+		}
+	}
+
+	/**
+	 * Tries every column arrangement that orders stacks and columns by
+	 * decreasing clue count, given the columns' counts and the stacks'
+	 * packed counts, then searches the rows under each one.
+	 */
+	private void arrangeColumns(int[] colClues, int[] stackClues) {
+		for(int[] stacks : PERMS) {
+			if(!decreasing(stackClues, stacks, 0)) continue;
+			for(int[] p0 : PERMS) {
+				if(!decreasing(colClues, p0, stacks[0] * PART)) continue;
+				for(int[] p1 : PERMS) {
+					if(!decreasing(colClues, p1, stacks[1] * PART)) continue;
+					for(int[] p2 : PERMS) {
+						if(!decreasing(colClues, p2, stacks[2] * PART)) continue;
+						int[][] within = { p0, p1, p2 };
+						for(int s = 0; s < PART; s++) {
+							for(int k = 0; k < PART; k++) {
+								colOrder[s * PART + k] = stacks[s] * PART + within[s][k];
+							}
+						}
+						java.util.Arrays.fill(label, 0);
+						nextLabel = 1;
+						chooseRow(0);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * True if values[offset + order[k]] does not increase with k.
+	 */
+	private static boolean decreasing(int[] values, int[] order, int offset) {
+		return values[offset + order[0]] >= values[offset + order[1]]
+				&& values[offset + order[1]] >= values[offset + order[2]];
+	}
+
+	/**
+	 * Fills in the clue count of each row of cells, and for each band
+	 * its rows' counts in decreasing order packed into one int.
+	 */
+	private static void countClues(int[] cells, int[] rows, int[] bands) {
+		for(int r = 0; r < SIZE; r++) {
+			rows[r] = 0;
+			for(int j = 0; j < SIZE; j++) {
+				if(cells[r * SIZE + j] != 0) rows[r]++;
+			}
+		}
+		for(int b = 0; b < PART; b++) {
+			int x = rows[b * PART], y = rows[b * PART + 1], z = rows[b * PART + 2];
+			int hi = Math.max(x, Math.max(y, z)), lo = Math.min(x, Math.min(y, z));
+			bands[b] = (hi * (SIZE + 1) + (x + y + z - hi - lo)) * (SIZE + 1) + lo;
+		}
+	}
+
+	/**
+	 * Compares two orientations by their bands' packed counts, each
+	 * taken in decreasing order.
+	 */
+	private static int compareProfiles(int[] a, int[] b) {
+		int[] x = a.clone(), y = b.clone();
+		java.util.Arrays.sort(x);
+		java.util.Arrays.sort(y);
+		for(int k = PART - 1; k >= 0; k--) {
+			if(x[k] != y[k]) return (x[k] < y[k]) ? -1 : 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Picks output row pos. At the start of a band, the candidates are
+	 * the rows with the most clues in the unused bands that rank highest;
+	 * otherwise the rows with the most clues left in the current band.
+	 * Of those, only the rows that relabel smallest are followed.
+	 */
+	private void chooseRow(int pos) {
+		if(pos == SIZE) {
+			if(improved) {
+				bestTransposed = transposed;
+				System.arraycopy(rowOrder, 0, bestRowOrder, 0, SIZE);
+				System.arraycopy(colOrder, 0, bestColOrder, 0, SIZE);
+				System.arraycopy(label, 0, bestLabel, 0, SIZE + 1);
+				improved = false;
+			}
+			return;
+		}
+		int[] cand = candidates[pos];
+		int n = 0;
+		if(pos % PART == 0) {
+			int top = -1;
+			for(int b = 0; b < PART; b++) {
+				if(!rowUsed[b * PART]) top = Math.max(top, bands[b]);  // bands are used whole
+			}
+			for(int r = 0; r < SIZE; r++) {
+				if(!rowUsed[r] && bands[r / PART] == top && clues[r] == top / ((SIZE + 1) * (SIZE + 1))) {
+					cand[n++] = r;
+				}
+			}
+		} else {
+			int band = rowOrder[pos - 1] / PART;
+			int most = -1;
+			for(int r = band * PART; r < band * PART + PART; r++) {
+				if(!rowUsed[r]) most = Math.max(most, clues[r]);
+			}
+			for(int r = band * PART; r < band * PART + PART; r++) {
+				if(!rowUsed[r] && clues[r] == most) cand[n++] = r;
+			}
+		}
+
+		// relabel each candidate and find the smallest
+		int[][] values = rowValues[pos];
+		int min = -1;
+		for(int k = 0; k < n; k++) {
+			relabel(cand[k], values[k]);
+			if(min < 0 || compare(values[k], values[min]) < 0) min = k;
+		}
+		int versusBest = (pos < bestRows) ? compareToBest(values[min], pos) : -1;
+		if(versusBest > 0) return;
+		if(versusBest < 0) {
+			System.arraycopy(values[min], 0, best, pos * SIZE, SIZE);
+			bestRows = pos + 1;
+			improved = true;
+		}
+
+		for(int k = 0; k < n; k++) {
+			if(k != min && compare(values[k], values[min]) != 0) continue;
+			int r = cand[k];
+			int savedNext = nextLabel;
+			for(int j = 0; j < SIZE; j++) {
+				int v = cells[r * SIZE + colOrder[j]];
+				if(v != 0 && label[v] == 0) label[v] = nextLabel++;
+			}
+			rowUsed[r] = true;
+			rowOrder[pos] = r;
+			chooseRow(pos + 1);
+			rowUsed[r] = false;
+			for(int d = 1; d <= SIZE; d++) {
+				if(label[d] >= savedNext) label[d] = 0;
+			}
+			nextLabel = savedNext;
+		}
+	}
+
+	/**
+	 * Writes row r under the current column order and labels into out,
+	 * giving digits without a label the next labels in order.
+	 */
+	private void relabel(int r, int[] out) {
+		int next = nextLabel;
+		for(int j = 0; j < SIZE; j++) {
+			int v = cells[r * SIZE + colOrder[j]];
+			if(v == 0) out[j] = 0;
+			else if(label[v] != 0) out[j] = label[v];
+			else out[j] = next++;  // digits are distinct within a row
+		}
+	}
+
+	private static int compare(int[] a, int[] b) {
+		for(int j = 0; j < SIZE; j++) {
+			if(a[j] != b[j]) return (a[j] < b[j]) ? -1 : 1;
+		}
+		return 0;
+	}
+
+	private int compareToBest(int[] row, int pos) {
+		int base = pos * SIZE;
+		for(int j = 0; j < SIZE; j++) {
+			if(row[j] != best[base + j]) return (row[j] < best[base + j]) ? -1 : 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Digit -> label for the best arrangement, with digits missing from
+	 * the grid given the remaining labels in increasing order.
+	 */
+	private int[] completeLabels() {
+		int[] labelOf = new int[SIZE + 1];
+		int next = 1;
+		for(int d = 1; d <= SIZE; d++) {
+			labelOf[d] = bestLabel[d];
+			if(bestLabel[d] != 0) next++;
+		}
+		for(int d = 1; d <= SIZE; d++) {
+			if(labelOf[d] == 0) labelOf[d] = next++;
+		}
+		return labelOf;
+	}
+
+	/**
+	 * Label -> digit, the inverse of completeLabels().
+	 */
+	private int[] inverseLabels() {
+		int[] labelOf = completeLabels();
+		int[] digitOf = new int[SIZE + 1];
+		for(int d = 1; d <= SIZE; d++) {
+			digitOf[labelOf[d]] = d;
+		}
+		return digitOf;
+	}
+}
@@ -0,0 +1,186 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/*
+ * Tests for SudokuCanonicalizer and the CanonicalCache built on it.
+ * CS108 Stanford.
+ */
+public class SudokuCanonicalizerTest extends TestCase {
+
+	private static final int SIZE = Sudoku.SIZE;
+	private static final int PART = Sudoku.PART;
+
+	// Puzzles of puzzles.txt tried, and random copies of each.
+	private static final int CORPUS_PUZZLES = 100;
+	private static final int COPIES = 5;
+
+	private List<int[][]> corpus;
+	private final Random random = new Random(108);
+
+	@Override
+	protected void setUp() throws IOException {
+		corpus = new ArrayList<int[][]>();
+		corpus.add(Sudoku.easyGrid);
+		corpus.add(Sudoku.mediumGrid);
+		corpus.add(Sudoku.hardGrid);
+		BufferedReader in = new BufferedReader(new FileReader("puzzles.txt"));
+		try {
+			String line;
+			while((line = in.readLine()) != null && corpus.size() < CORPUS_PUZZLES) {
+				if(line.startsWith("#")) continue;
+				int[][] grid = new int[SIZE][SIZE];
+				if(Sudoku.lineToGrid(line, grid)) corpus.add(grid);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * A random symmetric copy of grid: digits relabelled, possibly
+	 * transposed, bands, stacks and the rows and columns within them
+	 * reordered.
+	 */
+	private int[][] randomCopy(int[][] grid) {
+		int[] digits = shuffled(SIZE + 1, 1);
+		int[] rows = shuffledLines();
+		int[] cols = shuffledLines();
+		boolean transpose = random.nextBoolean();
+		int[][] copy = new int[SIZE][SIZE];
+		for(int i = 0; i < SIZE; i++) {
+			for(int j = 0; j < SIZE; j++) {
+				int value = transpose ? grid[cols[j]][rows[i]] : grid[rows[i]][cols[j]];
+				copy[i][j] = digits[value];
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * 0..n-1 shuffled, leaving the first fixed entries in place.
+	 */
+	private int[] shuffled(int n, int fixed) {
+		List<Integer> list = new ArrayList<Integer>();
+		for(int i = fixed; i < n; i++) list.add(i);
+		Collections.shuffle(list, random);
+		int[] result = new int[n];
+		for(int i = 0; i < n; i++) result[i] = (i < fixed) ? i : list.get(i - fixed);
+		return result;
+	}
+
+	/**
+	 * Row (or column) numbers with the bands and the rows within each
+	 * band shuffled.
+	 */
+	private int[] shuffledLines() {
+		int[] bands = shuffled(PART, 0);
+		int[] lines = new int[SIZE];
+		for(int b = 0; b < PART; b++) {
+			int[] within = shuffled(PART, 0);
+			for(int r = 0; r < PART; r++) lines[b * PART + r] = bands[b] * PART + within[r];
+		}
+		return lines;
+	}
+
+	private static int[][] solve(int[][] grid) {
+		Sudoku s = new Sudoku(grid);
+		assertEquals(1, s.solve());
+		return s.getSolution();
+	}
+
+	private static int[][] toGrid(int[] cells) {
+		return Sudoku.cellsToGrid(cells, 0, new int[SIZE][SIZE]);
+	}
+
+	/**
+	 * Symmetric copies have the same canonical form, and two different
+	 * puzzles do not.
+	 */
+	public void testCopiesShareCanonicalForm() {
+		SudokuCanonicalizer c = new SudokuCanonicalizer();
+		int[] form = new int[SIZE * SIZE];
+		int[] copyForm = new int[SIZE * SIZE];
+		for(int[][] grid : corpus) {
+			c.canonicalize(grid, form);
+			for(int k = 0; k < COPIES; k++) {
+				int[][] copy = randomCopy(grid);
+				c.canonicalize(copy, copyForm);
+				assertTrue(Sudoku.gridToText(copy), Arrays.equals(form, copyForm));
+			}
+		}
+		c.canonicalize(new int[SIZE][SIZE], form);
+		assertTrue(Arrays.equals(new int[SIZE * SIZE], form));
+		c.canonicalize(corpus.get(corpus.size() - 1), form);
+		c.canonicalize(corpus.get(corpus.size() - 2), copyForm);
+		assertFalse(Arrays.equals(form, copyForm));
+	}
+
+	/**
+	 * The canonical form is itself a copy of the grid: same clue count,
+	 * and it has exactly one solution when the grid has.
+	 */
+	public void testCanonicalFormIsACopy() {
+		SudokuCanonicalizer c = new SudokuCanonicalizer();
+		int[] form = new int[SIZE * SIZE];
+		for(int[][] grid : corpus) {
+			c.canonicalize(grid, form);
+			int clues = 0, formClues = 0;
+			for(int i = 0; i < SIZE * SIZE; i++) {
+				if(grid[i / SIZE][i % SIZE] != 0) clues++;
+				if(form[i] != 0) formClues++;
+			}
+			assertEquals(clues, formClues);
+			solve(toGrid(form));
+		}
+	}
+
+	/**
+	 * The canonical grid's solution, mapped back with toOriginal(), is
+	 * the solution of the original grid, and toCanonical() maps it
+	 * forward again.
+	 */
+	public void testSolutionsMapBothWays() {
+		SudokuCanonicalizer c = new SudokuCanonicalizer();
+		int[] form = new int[SIZE * SIZE];
+		int[] forward = new int[SIZE * SIZE];
+		int[][] back = new int[SIZE][SIZE];
+		for(int[][] grid : corpus) {
+			int[][] copy = randomCopy(grid);
+			c.canonicalize(copy, form);
+			int[][] canonicalSolution = solve(toGrid(form));
+			int[] canonicalCells = new int[SIZE * SIZE];
+			for(int i = 0; i < SIZE; i++) {
+				System.arraycopy(canonicalSolution[i], 0, canonicalCells, i * SIZE, SIZE);
+			}
+			c.toOriginal(canonicalCells, back);
+			assertEquals(Sudoku.gridToText(solve(copy)), Sudoku.gridToText(back));
+			c.toCanonical(back, forward);
+			assertTrue(Arrays.equals(canonicalCells, forward));
+		}
+	}
+
+	/**
+	 * A symmetric copy of a cached puzzle is answered from the cache,
+	 * with its own solution rather than the cached one.
+	 */
+	public void testCacheAnswersCopies() {
+		CanonicalCache cache = new CanonicalCache(1000);
+		int[][] solution = new int[SIZE][SIZE];
+		for(int[][] grid : corpus) {
+			assertEquals(1, cache.solve(grid, new BacktrackingSolver(), Sudoku.MAX_SOLUTIONS, solution));
+		}
+		long hits = cache.getHits();
+		for(int[][] grid : corpus) {
+			int[][] copy = randomCopy(grid);
+			assertEquals(1, cache.solve(copy, new BacktrackingSolver(), Sudoku.MAX_SOLUTIONS, solution));
+			assertEquals(Sudoku.gridToText(solve(copy)), Sudoku.gridToText(solution));
+		}
+		assertEquals(hits + corpus.size(), cache.getHits());
+	}
+}
@@ -2,8 +2,15 @@ import javax.swing.*;
 import javax.swing.border.TitledBorder;
 import javax.swing.event.*;
 
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Highlighter;
+
 import java.awt.*;
 import java.awt.event.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 
  public class SudokuFrame extends JFrame {
@@ -16,11 +23,31 @@ import java.awt.event.*;
 	 protected JCheckBox autoCheck;
 	 protected JComboBox gridChoices;
 	 protected JButton load;
+	 protected JComboBox<Sudoku.Engine> engineChoices;
 	 
 	 private static final int EMPTY = 0;
 	 private static final int EASY = 1;
 	 private static final int MEDIUM = 2;
 	 private static final int HARD = 3;
+	 
+	 // Auto check waits this long after the last edit before solving.
+	 private static final int DEBOUNCE_MS = 250;
+	 
+	 // Fires check() once typing pauses; restarted by every edit.
+	 private Timer debounce;
+	 // The solve in flight, if any, and the number of the latest one
+	 // started, so results from older solves are dropped.
+	 private SolveWorker worker;
+	 private int generation = 0;
+	 
+	 // Results of earlier checks, shared by all the workers.
+	 private static final int CACHE_SIZE = 256;
+	 private final SolveCache cache = new SolveCache(CACHE_SIZE);
+	 
+	 // Marks on the input's clashing digits when a grid is invalid.
+	 private static final Highlighter.HighlightPainter CONFLICT_PAINTER =
+			 new DefaultHighlighter.DefaultHighlightPainter(Color.PINK);
+	 private final List<Object> conflictMarks = new ArrayList<Object>();
 	
 	public SudokuFrame() {
 		super("Sudoku Solver");
@@ -50,12 +77,14 @@ import java.awt.event.*;
 		autoCheck.setSelected(true);
 		gridChoices = new JComboBox(new String[] {"none", "easy", "medium", "hard"});
 		load = new JButton("Load Grid");
+		engineChoices = new JComboBox<Sudoku.Engine>(Sudoku.Engine.values());
 		
 		JPanel row = new JPanel(new FlowLayout(FlowLayout.LEFT));
 		row.add(solve);
 		row.add(autoCheck);
 		row.add(load);
 		row.add(gridChoices);
+		row.add(engineChoices);
 		
 		
 		panel.add(input, BorderLayout.WEST);
@@ -66,18 +95,25 @@ import java.awt.event.*;
 	}
 	
 	private void addListeners() {
+		debounce = new Timer(DEBOUNCE_MS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent arg0) {
+				check();
+			}
+		});
+		debounce.setRepeats(false);
 		input.getDocument().addDocumentListener(new DocumentListener() {
 			@Override
 			public void changedUpdate(DocumentEvent e) {
-				if(autoCheck.isSelected()) check();
+				textChanged();
 			}
 			@Override
 			public void insertUpdate(DocumentEvent arg0) {
-				if(autoCheck.isSelected()) check();
+				textChanged();
 			}
 			@Override
 			public void removeUpdate(DocumentEvent arg0) {
-				if(autoCheck.isSelected()) check();
+				textChanged();
 			}
 		});
 		solve.addActionListener(new ActionListener() {
@@ -113,31 +149,178 @@ import java.awt.event.*;
 				if(autoCheck.isSelected()) check();
 			}
 		});
+		engineChoices.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent arg0) {
+				if(autoCheck.isSelected()) check();
+			}
+		});
 	}
 	
+	/**
+	 * Called on every edit. The running solve is for old text, so it is
+	 * cancelled straight away; with auto check on, a new one starts
+	 * once the edits pause for DEBOUNCE_MS.
+	 */
+	private void textChanged() {
+		clearConflicts();
+		cancelWorker();
+		if(autoCheck.isSelected()) debounce.restart();
+	}
+	
+	/**
+	 * Starts solving the current text in the background, replacing any
+	 * solve already running. Runs on the event thread.
+	 */
 	private void check(){
-		String text = input.getText();
-		Sudoku s;
-		try{
-			s = new Sudoku(Sudoku.textToGrid(text));
-		} catch(RuntimeException e) {
-			output.setText("Parsing error.");
-			return;
+		debounce.stop();
+		cancelWorker();
+		generation++;
+		worker = new SolveWorker(input.getText(),
+				(Sudoku.Engine) engineChoices.getSelectedItem(), generation);
+		worker.execute();
+	}
+	
+	private void cancelWorker() {
+		if(worker != null) {
+			worker.stop();
+			worker = null;
+		}
+	}
+	
+	/**
+	 * Highlights the digits of each conflicting pair of cells in the
+	 * input, provided it still holds text, the text the grid came from.
+	 * Cells are counted the way textToGrid() reads them.
+	 */
+	private void showConflicts(String text, List<int[]> conflicts) {
+		clearConflicts();
+		if(!input.getText().equals(text)) return;
+		int[] offsets = new int[Sudoku.SIZE * Sudoku.SIZE];
+		int found = 0;
+		for(int i = 0; i < text.length() && found < offsets.length; i++) {
+			if(Character.digit(text.charAt(i), 10) >= 0) offsets[found++] = i;
+		}
+		Highlighter h = input.getHighlighter();
+		try {
+			for(int[] pair : conflicts) {
+				for(int k = 0; k < pair.length; k += 2) {
+					int at = offsets[pair[k] * Sudoku.SIZE + pair[k + 1]];
+					conflictMarks.add(h.addHighlight(at, at + 1, CONFLICT_PAINTER));
+				}
+			}
+		} catch(BadLocationException ignored) {
+			// text changed under us; the next check redraws
+		}
+	}
+	
+	private void clearConflicts() {
+		for(Object mark : conflictMarks) {
+			input.getHighlighter().removeHighlight(mark);
+		}
+		conflictMarks.clear();
+	}
+	
+	/**
+	 * Parses, validates and solves one snapshot of the input text off
+	 * the event thread, then shows the result if no newer check has
+	 * been started in the meantime.
+	 */
+	private class SolveWorker extends SwingWorker<String, Void> {
+		private final String text;
+		private final Sudoku.Engine engine;
+		private final int number;
+		private volatile Sudoku sudoku;
+		private volatile List<int[]> conflicts;
+		
+		private SolveWorker(String text, Sudoku.Engine engine, int number) {
+			this.text = text;
+			this.engine = engine;
+			this.number = number;
 		}
-		if(!s.validate()) {
-			output.setText("Invalid grid.");
-			return;
+		
+		@Override
+		protected String doInBackground() {
+			int[][] grid;
+			try{
+				grid = Sudoku.textToGrid(text);
+			} catch(RuntimeException e) {
+				return "Parsing error.";
+			}
+			SolveCache.Entry hit = cache.lookup(grid, engine);
+			if(hit != null) return format(hit, "exact hit", null);
+			Sudoku s = new Sudoku(grid);
+			if(!s.validate()) {
+				conflicts = s.getConflicts();
+				StringBuilder sb = new StringBuilder("Invalid grid.\n");
+				for(int[] pair : conflicts) {
+					sb.append("row " + (pair[0] + 1) + " col " + (pair[1] + 1) + " clashes with row "
+							+ (pair[2] + 1) + " col " + (pair[3] + 1) + "\n");
+				}
+				return sb.toString();
+			}
+			s.setEngine(engine);
+			s.setCollectStats(true);
+			sudoku = s;
+			if(isCancelled()) return null;
+			
+			// Clues added to a grid with one solution, all agreeing with
+			// it, leave that solution the only one: no search needed.
+			// Any other change is solved afresh, as settling uniqueness
+			// would cost a full search anyway.
+			SolveCache.Entry prior = cache.lastSolving(grid, engine);
+			if(prior != null && prior.getSolutions() == 1 && prior.cluesWithin(grid)) {
+				return format(cache.storeReused(grid, engine, 1, prior.getSolution()),
+						"reused, added clues keep it unique", null);
+			}
+			
+			s.solve();
+			if(s.isCancelled()) return null;
+			SolveCache.Entry entry = cache.store(grid, engine, s.getStats().getSolutions(), s.getSolution());
+			return format(entry, "miss", s.getStats());
+		}
+		
+		/**
+		 * Solution text, then the stats of the solve just run (or the
+		 * count alone if nothing was solved), then how the cache helped.
+		 */
+		private String format(SolveCache.Entry entry, String how, SolveStats stats) {
+			StringBuilder sb = new StringBuilder();
+			if(entry.getSolution() != null) {
+				sb.append(Sudoku.gridToText(entry.getSolution()) + "\n");
+			}
+			if(stats != null) {
+				sb.append(stats + "\n");
+			} else {
+				sb.append("solutions: " + entry.getSolutions() + "\n");
+			}
+			sb.append("cache: " + how + "\n");
+			sb.append(cache.getSummary());
+			return sb.toString();
 		}
-		int numSolutions = s.solve();
-		String solved = s.getSolutionText();
-		long elapsed = s.getElapsed();
 		
-		StringBuilder sb = new StringBuilder();
-		sb.append(solved + "\n");
-		sb.append("solutions: " + numSolutions + "\n");
-		sb.append("elapsed: " + elapsed + "ms");
+		/**
+		 * Cancels the worker and stops its search.
+		 */
+		private void stop() {
+			cancel(false);
+			Sudoku s = sudoku;
+			if(s != null) s.cancel();
+		}
 		
-		output.setText(sb.toString());
+		@Override
+		protected void done() {
+			if(isCancelled() || number != generation) return;
+			try {
+				output.setText(get());
+				if(conflicts != null) showConflicts(text, conflicts);
+				else clearConflicts();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch(ExecutionException e) {
+				output.setText("Error: " + e.getCause());
+			}
+		}
 	}
 	
 	
@@ -0,0 +1,209 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+/*
+ * Generates 9x9 puzzles with exactly one solution.
+ * CS108 Stanford.
+ *
+ * A full grid is made by filling the three diagonal boxes, which do not
+ * constrain each other, with shuffled digits and letting the solver
+ * complete it. Clues are then removed in random order; each removal is
+ * kept only if the puzzle still has one solution, which the solver
+ * settles by stopping at a second one. Difficulty decides how far to
+ * go and what the result must need: easier puzzles keep more clues and
+ * must fall to propagation alone, hard ones lose every clue they can
+ * and must need guessing.
+ */
+public class SudokuGenerator {
+
+	/**
+	 * Target difficulty.
+	 */
+	public enum Difficulty {
+		// clues kept at least, and whether solving may need guesses
+		EASY(36, false), MEDIUM(28, false), HARD(0, true);
+
+		private final int minClues;
+		private final boolean guessing;
+
+		private Difficulty(int minClues, boolean guessing) {
+			this.minClues = minClues;
+			this.guessing = guessing;
+		}
+	}
+
+	private static final int SIZE = Sudoku.SIZE;
+	private static final int PART = Sudoku.PART;
+	private static final int CELLS = SIZE * SIZE;
+	// Grids tried for one HARD puzzle before giving up. About half of
+	// them need guessing, so reaching this means something is wrong.
+	private static final int MAX_ATTEMPTS = 100;
+
+	private final Difficulty difficulty;
+	private final Random random;
+	private final Sudoku sudoku = new Sudoku(new int[SIZE][SIZE]);
+
+	/**
+	 * @param difficulty difficulty of the puzzles made
+	 * @param seed random seed; the same seed gives the same puzzles
+	 */
+	public SudokuGenerator(Difficulty difficulty, long seed) {
+		this.difficulty = difficulty;
+		random = new Random(seed);
+		sudoku.setOrdering(Sudoku.Ordering.DYNAMIC);
+	}
+
+	/**
+	 * Returns a new puzzle with exactly one solution and the generator's
+	 * difficulty.
+	 * @throws IllegalStateException if no HARD puzzle turns up in
+	 * MAX_ATTEMPTS grids
+	 * @throws CancellationException if the thread is interrupted between
+	 * attempts
+	 */
+	public int[][] generate() {
+		for(int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			if(Thread.currentThread().isInterrupted()) {
+				throw new CancellationException("Puzzle generation interrupted");
+			}
+			int[][] puzzle = removeClues(fullGrid());
+			if(!difficulty.guessing) return puzzle;
+			// hard puzzles must not fall to propagation alone
+			sudoku.load(puzzle);
+			sudoku.setMaxSolutions(2);
+			sudoku.solve();
+			if(sudoku.getGuesses() > 0) return puzzle;
+		}
+		throw new IllegalStateException("No " + difficulty + " puzzle in " + MAX_ATTEMPTS + " attempts");
+	}
+
+	/**
+	 * A random complete grid.
+	 */
+	private int[][] fullGrid() {
+		int[][] grid = new int[SIZE][SIZE];
+		for(int b = 0; b < PART; b++) {
+			int[] digits = shuffled(SIZE);
+			for(int k = 0; k < SIZE; k++) {
+				grid[b * PART + k / PART][b * PART + k % PART] = digits[k] + 1;
+			}
+		}
+		sudoku.load(grid);
+		sudoku.setMaxSolutions(1);
+		if(sudoku.solve() != 1) throw new IllegalStateException("Diagonal boxes left no solution");
+		return sudoku.getSolution();
+	}
+
+	/**
+	 * Blanks the cells of full in random order, keeping each blank only
+	 * if the puzzle stays unique (and, unless guessing is allowed,
+	 * solvable by propagation), down to the difficulty's clue count.
+	 */
+	private int[][] removeClues(int[][] full) {
+		int[][] puzzle = full;
+		sudoku.setMaxSolutions(2);
+		int clues = CELLS;
+		for(int cell : shuffled(CELLS)) {
+			if(clues <= difficulty.minClues) break;
+			int i = cell / SIZE, j = cell % SIZE;
+			int value = puzzle[i][j];
+			puzzle[i][j] = 0;
+			sudoku.load(puzzle);
+			boolean keep = sudoku.solve() == 1 && (difficulty.guessing || sudoku.getGuesses() == 0);
+			if(keep) clues--;
+			else puzzle[i][j] = value;
+		}
+		sudoku.load(puzzle);
+		if(!sudoku.validate()) throw new IllegalStateException("Generated an invalid grid");
+		return puzzle;
+	}
+
+	/**
+	 * Random permutation of 0..n-1.
+	 */
+	private int[] shuffled(int n) {
+		int[] a = new int[n];
+		for(int i = 0; i < n; i++) a[i] = i;
+		for(int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int t = a[i];
+			a[i] = a[j];
+			a[j] = t;
+		}
+		return a;
+	}
+
+	/**
+	 * Generates count puzzles on threads worker threads. Puzzle k comes
+	 * from a generator seeded with seed + k, so the result does not
+	 * depend on the number of threads.
+	 */
+	public static List<int[][]> generate(int count, final Difficulty difficulty,
+			final long seed, int threads) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<int[][]>> futures = new ArrayList<Future<int[][]>>(count);
+		try {
+			for(int k = 0; k < count; k++) {
+				final long puzzleSeed = seed + k;
+				futures.add(pool.submit(new Callable<int[][]>() {
+					@Override
+					public int[][] call() {
+						return new SudokuGenerator(difficulty, puzzleSeed).generate();
+					}
+				}));
+			}
+			List<int[][]> puzzles = new ArrayList<int[][]>(count);
+			for(Future<int[][]> f : futures) {
+				try {
+					puzzles.add(f.get());
+				} catch(ExecutionException e) {
+					throw new IllegalStateException("Generator failed", e.getCause());
+				}
+			}
+			return puzzles;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Usage: SudokuGenerator [count [difficulty [threads [output [seed]]]]]
+	 * Writes count puzzles (default 100, MEDIUM, one thread per core) in
+	 * the 81-character line format, '.' for blanks, to output or standard
+	 * out, and reports puzzles per second on standard error.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+		Difficulty difficulty = (args.length > 1)
+				? Difficulty.valueOf(args[1].toUpperCase()) : Difficulty.MEDIUM;
+		int threads = (args.length > 2) ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+		long seed = (args.length > 4) ? Long.parseLong(args[4]) : System.nanoTime();
+
+		long start = System.nanoTime();
+		List<int[][]> puzzles = generate(count, difficulty, seed, threads);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		Writer out = new BufferedWriter((args.length > 3)
+				? new FileWriter(args[3]) : new OutputStreamWriter(System.out));
+		try {
+			int clues = 0;
+			for(int[][] puzzle : puzzles) {
+				for(int[] row : puzzle) {
+					for(int value : row) {
+						out.write((value == 0) ? '.' : (char) ('0' + value));
+						if(value != 0) clues++;
+					}
+				}
+				out.write('\n');
+			}
+			System.err.printf("%d %s puzzles in %.3fs: %.1f puzzles/s, %.1f clues avg (%d threads)%n",
+					count, difficulty, seconds, count / seconds, (double) clues / count, threads);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,25 @@
+/*
+ * Common interface for the Sudoku search engines.
+ * CS108 Stanford.
+ */
+public interface SudokuSolver {
+
+	/**
+	 * Counts the solutions of the given grid, stopping once limit
+	 * solutions have been found. The grid is not modified.
+	 * A solver may be reused for many grids, but is not safe to
+	 * share between threads.
+	 * @param grid square grid of side part * part, part 2..6 (9x9 for a
+	 * standard Sudoku), 0 for blank cells
+	 * @param limit maximum number of solutions to count
+	 * @return number of solutions found, at most limit
+	 */
+	public int solve(int[][] grid, int limit);
+
+	/**
+	 * Returns the first solution found by the last call to solve(),
+	 * or null if there was none.
+	 * @return solved grid
+	 */
+	public int[][] getSolution();
+}
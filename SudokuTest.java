@@ -0,0 +1,201 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/*
+ * Tests for Sudoku's searches and validation.
+ * CS108 Stanford.
+ */
+public class SudokuTest extends TestCase {
+
+	// Puzzles of puzzles.txt tried by the slower tests.
+	private static final int CORPUS_PUZZLES = 200;
+
+	private List<int[][]> corpus;
+
+	@Override
+	protected void setUp() throws IOException {
+		corpus = new ArrayList<int[][]>();
+		BufferedReader in = new BufferedReader(new FileReader("puzzles.txt"));
+		try {
+			String line;
+			while((line = in.readLine()) != null && corpus.size() < CORPUS_PUZZLES) {
+				if(line.startsWith("#")) continue;
+				int[][] grid = new int[Sudoku.SIZE][Sudoku.SIZE];
+				if(Sudoku.lineToGrid(line, grid)) corpus.add(grid);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * The built-in grids, a few with clues cleared so they have many
+	 * solutions, and an empty 4x4.
+	 */
+	private static List<int[][]> searchGrids() {
+		List<int[][]> grids = new ArrayList<int[][]>();
+		grids.add(Sudoku.easyGrid);
+		grids.add(Sudoku.mediumGrid);
+		grids.add(Sudoku.hardGrid);
+		grids.add(Sudoku.unsolvableGrid);
+		grids.add(clearRows(Sudoku.hardGrid, 2));
+		grids.add(clearRows(Sudoku.mediumGrid, 2));
+		grids.add(new int[4][4]);
+		return grids;
+	}
+
+	private static int[][] clearRows(int[][] grid, int rows) {
+		int[][] copy = copy(grid);
+		for(int i = 0; i < rows; i++) Arrays.fill(copy[i], 0);
+		return copy;
+	}
+
+	private static int[][] copy(int[][] grid) {
+		int[][] copy = new int[grid.length][];
+		for(int i = 0; i < grid.length; i++) copy[i] = grid[i].clone();
+		return copy;
+	}
+
+	private static Sudoku newSudoku(int[][] grid, Sudoku.Ordering ordering, boolean propagation) {
+		Sudoku s = new Sudoku(grid);
+		s.setOrdering(ordering);
+		s.setPropagation(propagation);
+		s.setMaxSolutions(Integer.MAX_VALUE);
+		return s;
+	}
+
+	/**
+	 * The iterative search finds the same count and first solution as
+	 * the recursive one, after visiting the same number of nodes, under
+	 * every ordering with and without propagation.
+	 */
+	public void testIterativeMatchesRecursive() {
+		List<int[][]> grids = searchGrids();
+		grids.addAll(corpus);
+		for(Sudoku.Ordering ordering : Sudoku.Ordering.values()) {
+			for(boolean propagation : new boolean[] { false, true }) {
+				for(int[][] grid : grids) {
+					String what = ordering + (propagation ? " with" : " without")
+							+ " propagation on\n" + Sudoku.gridToText(grid);
+					Sudoku recursive = newSudoku(grid, ordering, propagation);
+					recursive.setRecursive(true);
+					Sudoku iterative = newSudoku(grid, ordering, propagation);
+					assertEquals(what, recursive.solve(), iterative.solve());
+					assertEquals(what, recursive.getNodes(), iterative.getNodes());
+					assertEquals(what, recursive.getSolutionText(), iterative.getSolutionText());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Known solution counts, up to the default limit.
+	 */
+	public void testCounts() {
+		assertEquals(1, new Sudoku(Sudoku.hardGrid).solve());
+		assertEquals(0, new Sudoku(Sudoku.unsolvableGrid).solve());
+		assertEquals(Sudoku.MAX_SOLUTIONS, new Sudoku(new int[9][9]).solve());
+		Sudoku empty = new Sudoku(new int[4][4]);
+		empty.setMaxSolutions(Integer.MAX_VALUE);
+		assertEquals(288, empty.solve());
+		for(int[][] grid : corpus) {
+			assertEquals(Sudoku.gridToText(grid), 1, new Sudoku(grid).solve());
+		}
+	}
+
+	/**
+	 * A search run a few nodes at a time ends the same as one run in one
+	 * go, and its count never goes down in between.
+	 */
+	public void testResumeContinues() {
+		for(int[][] grid : searchGrids()) {
+			for(long step : new long[] { 1, 7, 1000 }) {
+				Sudoku whole = newSudoku(grid, Sudoku.Ordering.DYNAMIC, true);
+				whole.solve();
+				Sudoku parts = newSudoku(grid, Sudoku.Ordering.DYNAMIC, true);
+				int last = 0;
+				int calls = 0;
+				while(!parts.resume(step)) {
+					assertTrue(parts.getCount() >= last);
+					last = parts.getCount();
+					calls++;
+				}
+				String what = "steps of " + step + " on\n" + Sudoku.gridToText(grid);
+				assertEquals(what, whole.getCount(), parts.getCount());
+				assertEquals(what, whole.getNodes(), parts.getNodes());
+				assertEquals(what, whole.getSolutionText(), parts.getSolutionText());
+				assertTrue(what, calls >= (whole.getNodes() - 1) / step);
+				assertTrue("finished searches stay finished", parts.resume(step));
+			}
+		}
+	}
+
+	/**
+	 * solve() after some resume() calls carries on rather than starting
+	 * over.
+	 */
+	public void testSolveAfterResume() {
+		int[][] grid = clearRows(Sudoku.hardGrid, 2);
+		Sudoku whole = newSudoku(grid, Sudoku.Ordering.STATIC, false);
+		whole.solve();
+		Sudoku parts = newSudoku(grid, Sudoku.Ordering.STATIC, false);
+		assertFalse(parts.resume(50));
+		assertEquals(whole.getCount(), parts.solve());
+		assertEquals(whole.getNodes(), parts.getNodes());
+	}
+
+	/**
+	 * isValid() and validate() agree with checking every pair of cells
+	 * that share a row, column or box, on the corpus and on copies with
+	 * cells changed at random, some of them to values out of range.
+	 */
+	public void testValidationMatchesBruteForce() {
+		Random random = new Random(108);
+		int[] cells = new int[Sudoku.SIZE * Sudoku.SIZE];
+		int invalid = 0;
+		for(int[][] puzzle : corpus) {
+			for(int trial = 0; trial < 20; trial++) {
+				int[][] grid = copy(puzzle);
+				int changes = (trial == 0) ? 0 : random.nextInt(4);
+				for(int c = 0; c < changes; c++) {
+					int value = (random.nextInt(20) == 0) ? 10 : random.nextInt(Sudoku.SIZE + 1);
+					grid[random.nextInt(Sudoku.SIZE)][random.nextInt(Sudoku.SIZE)] = value;
+				}
+				for(int i = 0; i < Sudoku.SIZE; i++) {
+					System.arraycopy(grid[i], 0, cells, i * Sudoku.SIZE, Sudoku.SIZE);
+				}
+				boolean expected = bruteForceValid(grid);
+				if(!expected) invalid++;
+				String what = Sudoku.gridToText(grid);
+				assertEquals(what, expected, Sudoku.isValid(cells, 0));
+				Sudoku s = new Sudoku(grid);
+				assertEquals(what, expected, s.validate());
+				assertEquals(what, expected, s.getConflicts().isEmpty());
+			}
+		}
+		assertTrue("some grids are invalid", invalid > corpus.size());
+	}
+
+	private static boolean bruteForceValid(int[][] grid) {
+		int size = grid.length;
+		int part = (int) Math.round(Math.sqrt(size));
+		for(int a = 0; a < size * size; a++) {
+			int ra = a / size, ca = a % size;
+			int value = grid[ra][ca];
+			if(value < 0 || value > size) return false;
+			if(value == 0) continue;
+			for(int b = a + 1; b < size * size; b++) {
+				int rb = b / size, cb = b % size;
+				boolean shared = ra == rb || ca == cb
+						|| (ra / part == rb / part && ca / part == cb / part);
+				if(shared && grid[rb][cb] == value) return false;
+			}
+		}
+		return true;
+	}
+}
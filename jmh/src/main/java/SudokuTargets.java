@@ -0,0 +1,138 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/*
+ * The operations the JMH benchmarks time, one object per operation.
+ * CS108 Stanford.
+ *
+ * JMH will not generate code for benchmarks in the default package, and
+ * a class in a package cannot name Sudoku, so the benchmarks look these
+ * factories up by reflection once in their setup and then only call
+ * getAsInt()/get() on what they return. Everything an operation needs
+ * is built here beforehand, so only the operation itself is measured.
+ */
+public class SudokuTargets {
+
+	/**
+	 * The built-in grid with the given name: easy, medium, hard or
+	 * unsolvable.
+	 */
+	public static int[][] grid(String name) {
+		if(name.equals("easy")) return Sudoku.easyGrid;
+		if(name.equals("medium")) return Sudoku.mediumGrid;
+		if(name.equals("hard")) return Sudoku.hardGrid;
+		if(name.equals("unsolvable")) return Sudoku.unsolvableGrid;
+		throw new IllegalArgumentException("No grid " + name);
+	}
+
+	/**
+	 * Reloads and solves grid, returning the solution count.
+	 */
+	public static IntSupplier solve(String name) {
+		final int[][] grid = grid(name);
+		final Sudoku sudoku = new Sudoku(grid);
+		return new IntSupplier() {
+			@Override
+			public int getAsInt() {
+				sudoku.load(grid);
+				return sudoku.solve();
+			}
+		};
+	}
+
+	/**
+	 * validate() on the loaded grid; validate() changes nothing, so
+	 * there is no reloading between calls.
+	 */
+	public static IntSupplier validate(String name) {
+		final Sudoku sudoku = new Sudoku(grid(name));
+		return new IntSupplier() {
+			@Override
+			public int getAsInt() {
+				return sudoku.validate() ? 1 : 0;
+			}
+		};
+	}
+
+	public static Supplier<Object> textToGrid(String name) {
+		final String text = Sudoku.gridToText(grid(name));
+		return new Supplier<Object>() {
+			@Override
+			public Object get() {
+				return Sudoku.textToGrid(text);
+			}
+		};
+	}
+
+	public static Supplier<Object> gridToText(String name) {
+		final int[][] grid = grid(name);
+		return new Supplier<Object>() {
+			@Override
+			public Object get() {
+				return Sudoku.gridToText(grid);
+			}
+		};
+	}
+
+	/**
+	 * Loads and solves the next puzzle of the corpus each call.
+	 */
+	public static IntSupplier solveCorpus() throws IOException {
+		final int[][][] corpus = readCorpus();
+		final Sudoku sudoku = new Sudoku(corpus[0]);
+		return new IntSupplier() {
+			private int next = 0;
+			@Override
+			public int getAsInt() {
+				sudoku.load(corpus[next]);
+				if(++next == corpus.length) next = 0;
+				return sudoku.solve();
+			}
+		};
+	}
+
+	/**
+	 * validate() on the next puzzle of the corpus each call. Each puzzle
+	 * is loaded into its own Sudoku beforehand, so no load() is timed.
+	 */
+	public static IntSupplier validateCorpus() throws IOException {
+		int[][][] corpus = readCorpus();
+		final Sudoku[] sudokus = new Sudoku[corpus.length];
+		for(int i = 0; i < corpus.length; i++) sudokus[i] = new Sudoku(corpus[i]);
+		return new IntSupplier() {
+			private int next = 0;
+			@Override
+			public int getAsInt() {
+				Sudoku sudoku = sudokus[next];
+				if(++next == sudokus.length) next = 0;
+				return sudoku.validate() ? 1 : 0;
+			}
+		};
+	}
+
+	/**
+	 * Reads the puzzles.txt bundled into the jar, in the 81-character
+	 * line format.
+	 */
+	private static int[][][] readCorpus() throws IOException {
+		InputStream stream = SudokuTargets.class.getResourceAsStream("/puzzles.txt");
+		if(stream == null) throw new FileNotFoundException("puzzles.txt not bundled");
+		List<int[][]> puzzles = new ArrayList<int[][]>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(stream, "US-ASCII"));
+		try {
+			String line;
+			while((line = in.readLine()) != null) {
+				if(line.startsWith("#")) continue;
+				int[][] grid = new int[Sudoku.SIZE][Sudoku.SIZE];
+				if(Sudoku.lineToGrid(line, grid)) puzzles.add(grid);
+			}
+		} finally {
+			in.close();
+		}
+		if(puzzles.isEmpty()) throw new IOException("puzzles.txt holds no puzzles");
+		return puzzles.toArray(new int[puzzles.size()][][]);
+	}
+}
@@ -0,0 +1,37 @@
+package sudoku.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * solve() and validate() over the 1000 puzzles of puzzles.txt, one
+ * puzzle per operation in turn. CS108 Stanford.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CorpusBenchmark {
+
+	private IntSupplier solve, validate;
+
+	@Setup
+	public void setUp() throws Exception {
+		solve = (IntSupplier) Targets.make("solveCorpus");
+		validate = (IntSupplier) Targets.make("validateCorpus");
+	}
+
+	@Benchmark
+	public int solve() {
+		return solve.getAsInt();
+	}
+
+	@Benchmark
+	public int validate() {
+		return validate.getAsInt();
+	}
+}
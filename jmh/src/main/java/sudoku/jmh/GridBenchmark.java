@@ -0,0 +1,59 @@
+package sudoku.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * solve(), validate(), textToGrid() and gridToText() on each of the
+ * built-in grids. CS108 Stanford.
+ *
+ * solve includes the load() that resets the Sudoku between solves,
+ * as every reuse of a Sudoku pays it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class GridBenchmark {
+
+	@Param({ "easy", "medium", "hard", "unsolvable" })
+	public String grid;
+
+	private IntSupplier solve, validate;
+	private Supplier<Object> textToGrid, gridToText;
+
+	@SuppressWarnings("unchecked")
+	@Setup
+	public void setUp() throws Exception {
+		solve = (IntSupplier) Targets.make("solve", grid);
+		validate = (IntSupplier) Targets.make("validate", grid);
+		textToGrid = (Supplier<Object>) Targets.make("textToGrid", grid);
+		gridToText = (Supplier<Object>) Targets.make("gridToText", grid);
+	}
+
+	@Benchmark
+	public int solve() {
+		return solve.getAsInt();
+	}
+
+	@Benchmark
+	public int validate() {
+		return validate.getAsInt();
+	}
+
+	@Benchmark
+	public void textToGrid(Blackhole bh) {
+		bh.consume(textToGrid.get());
+	}
+
+	@Benchmark
+	public void gridToText(Blackhole bh) {
+		bh.consume(gridToText.get());
+	}
+}
@@ -0,0 +1,32 @@
+package sudoku.jmh;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/*
+ * Reaches the default package's SudokuTargets, which code in a package
+ * cannot name. Called from @Setup only, never while measuring.
+ * CS108 Stanford.
+ */
+final class Targets {
+
+	private Targets() {
+	}
+
+	/**
+	 * Calls the static factory SudokuTargets.name with the given
+	 * arguments, all Strings, and returns what it made.
+	 */
+	static Object make(String name, String... args) throws Exception {
+		Class<?>[] types = new Class<?>[args.length];
+		for(int i = 0; i < types.length; i++) types[i] = String.class;
+		Method factory = Class.forName("SudokuTargets").getMethod(name, types);
+		try {
+			return factory.invoke(null, (Object[]) args);
+		} catch(InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof Exception) throw (Exception) cause;
+			throw e;
+		}
+	}
+}